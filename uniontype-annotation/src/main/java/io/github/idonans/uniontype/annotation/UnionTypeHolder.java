@@ -0,0 +1,39 @@
+package io.github.idonans.uniontype.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记一个 UnionTypeViewHolder 对应的 unionType. 编译时由 uniontype-compiler 按 {@link #mapper()} 分组,
+ * 生成基于 switch 的 UnionTypeMapper, 运行时没有反射与 map 查找, 只有在首次创建时才会加载对应的 ViewHolder 类.
+ * <p>
+ * 被标记的类需要是非 abstract 的 UnionTypeViewHolder 子类, 并且有一个参数为 Host 的 public 构造函数.
+ *
+ * <pre>
+ * &#64;UnionTypeHolder(value = UNION_TYPE_TEXT, mapper = "com.example.feed.FeedUnionTypeMapper")
+ * public class TextViewHolder extends UnionTypeViewHolder {
+ *     public TextViewHolder(&#64;NonNull Host host) {
+ *         super(host, R.layout.text_item);
+ *     }
+ * }
+ *
+ * adapter.setUnionTypeMapper(new FeedUnionTypeMapper());
+ * </pre>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface UnionTypeHolder {
+
+    /**
+     * unionType, 同一个 mapper 中不能重复
+     */
+    int value();
+
+    /**
+     * 生成的 UnionTypeMapper 的完整类名
+     */
+    String mapper();
+
+}
@@ -0,0 +1,97 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试使用的数据
+ */
+final class BenchmarkItems {
+
+    private BenchmarkItems() {
+    }
+
+    static final class Item implements DeepDiff, StableId {
+
+        private final long mId;
+        private final int mVersion;
+
+        Item(long id, int version) {
+            mId = id;
+            mVersion = version;
+        }
+
+        @Override
+        public boolean isSameItem(@Nullable Object other) {
+            return other instanceof Item && ((Item) other).mId == mId;
+        }
+
+        @Override
+        public boolean isSameContent(@Nullable Object other) {
+            return other instanceof Item && ((Item) other).mId == mId && ((Item) other).mVersion == mVersion;
+        }
+
+        @Override
+        public int getItemHashCode() {
+            return Long.hashCode(mId);
+        }
+
+        @Override
+        public long getStableId() {
+            return mId;
+        }
+    }
+
+    @NonNull
+    static List<UnionTypeItemObject> createItems(long firstId, int size) {
+        final List<UnionTypeItemObject> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new UnionTypeItemObject(1, new Item(firstId + i, 0)));
+        }
+        return items;
+    }
+
+    /**
+     * @return 每组 groupSize 个数据, 共 groupCount 组
+     */
+    @NonNull
+    static GroupArrayList createGroupArrayList(int groupCount, int groupSize) {
+        final GroupArrayList groupArrayList = new GroupArrayList();
+        for (int group = 0; group < groupCount; group++) {
+            groupArrayList.setGroupItems(group, createItems((long) group * groupSize, groupSize));
+        }
+        return groupArrayList;
+    }
+
+    /**
+     * 代替 RecyclerView.Adapter 接收变化, 只累计次数以免被优化掉
+     */
+    static final class CountingListUpdateCallback implements ListUpdateListener {
+
+        int mCount;
+
+        @Override
+        public void onInserted(int position, int count) {
+            mCount += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mCount += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mCount++;
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            mCount += count;
+        }
+    }
+
+}
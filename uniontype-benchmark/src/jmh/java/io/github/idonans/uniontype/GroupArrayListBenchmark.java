@@ -0,0 +1,87 @@
+package io.github.idonans.uniontype;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GroupArrayList 的查询, 修改与快照复制
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GroupArrayListBenchmark {
+
+    @Param({"1", "16", "256"})
+    public int groupCount;
+
+    @Param({"1000", "100000"})
+    public int totalSize;
+
+    private GroupArrayList mGroupArrayList;
+    private List<UnionTypeItemObject> mAppendItems;
+    private int mPosition;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mGroupArrayList = BenchmarkItems.createGroupArrayList(groupCount, Math.max(1, totalSize / groupCount));
+        mAppendItems = BenchmarkItems.createItems(Long.MAX_VALUE / 2, 10);
+    }
+
+    private int nextPosition() {
+        // 跳跃访问, 避免总是命中同一个分组
+        mPosition = (mPosition + 7919) % mGroupArrayList.size();
+        return mPosition;
+    }
+
+    @Benchmark
+    public long getGroupAndPositionPacked() {
+        return mGroupArrayList.getGroupAndPositionPacked(nextPosition());
+    }
+
+    @Benchmark
+    public void getGroupAndPosition(Blackhole blackhole) {
+        blackhole.consume(mGroupArrayList.getGroupAndPosition(nextPosition()));
+    }
+
+    @Benchmark
+    public UnionTypeItemObject getItem() {
+        return mGroupArrayList.getItem(nextPosition());
+    }
+
+    @Benchmark
+    public int size() {
+        return mGroupArrayList.size();
+    }
+
+    /**
+     * 复制快照并修改其中一个分组 (写时复制), 之后查询一次以触发索引更新
+     */
+    @Benchmark
+    public UnionTypeItemObject copyAndAppend() {
+        final GroupArrayList copy = new GroupArrayList(mGroupArrayList);
+        copy.appendGroupItems(groupCount / 2, mAppendItems);
+        return copy.getItem(copy.size() - 1);
+    }
+
+    @Benchmark
+    public GroupArrayList copy() {
+        return new GroupArrayList(mGroupArrayList);
+    }
+
+    @Benchmark
+    public List<UnionTypeItemObject> toList() {
+        return mGroupArrayList.toList();
+    }
+
+}
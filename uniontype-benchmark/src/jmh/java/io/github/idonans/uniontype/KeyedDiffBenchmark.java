@@ -0,0 +1,95 @@
+package io.github.idonans.uniontype;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 StableId 的 diff 吞吐量, 以及 GroupArrayList 变化分组的检测
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KeyedDiffBenchmark {
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    /**
+     * 新数据中被删除, 插入, 移动以及内容变化的比例 (百分比)
+     */
+    @Param({"1", "10"})
+    public int changePercent;
+
+    private List<UnionTypeItemObject> mOldItems;
+    private List<UnionTypeItemObject> mNewItems;
+
+    private GroupArrayList mOldGroupArrayList;
+    private GroupArrayList mNewGroupArrayList;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Random random = new Random(size * 31L + changePercent);
+        mOldItems = BenchmarkItems.createItems(0, size);
+        mNewItems = new ArrayList<>(mOldItems);
+        final int changeCount = Math.max(1, size * changePercent / 100);
+        long nextId = size;
+        for (int i = 0; i < changeCount; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    mNewItems.remove(random.nextInt(mNewItems.size()));
+                    break;
+                case 1:
+                    mNewItems.add(random.nextInt(mNewItems.size() + 1),
+                            new UnionTypeItemObject(1, new BenchmarkItems.Item(nextId++, 0)));
+                    break;
+                case 2:
+                    Collections.swap(mNewItems, random.nextInt(mNewItems.size()), random.nextInt(mNewItems.size()));
+                    break;
+                default:
+                    final int position = random.nextInt(mNewItems.size());
+                    final BenchmarkItems.Item item = (BenchmarkItems.Item) mNewItems.get(position).itemObject;
+                    mNewItems.set(position, new UnionTypeItemObject(1, new BenchmarkItems.Item(item.getStableId(), 1)));
+                    break;
+            }
+        }
+
+        mOldGroupArrayList = BenchmarkItems.createGroupArrayList(64, size / 64);
+        mNewGroupArrayList = new GroupArrayList(mOldGroupArrayList);
+        for (int i = 0; i < changeCount; i++) {
+            mNewGroupArrayList.removeGroupItem(random.nextInt(64), 0);
+        }
+    }
+
+    @Benchmark
+    public int keyedDiff() {
+        final BenchmarkItems.CountingListUpdateCallback callback = new BenchmarkItems.CountingListUpdateCallback();
+        KeyedDiff.calculateDiff(mOldItems, mNewItems, true, callback);
+        return callback.mCount;
+    }
+
+    @Benchmark
+    public int keyedDiffWithoutMoves() {
+        final BenchmarkItems.CountingListUpdateCallback callback = new BenchmarkItems.CountingListUpdateCallback();
+        KeyedDiff.calculateDiff(mOldItems, mNewItems, false, callback);
+        return callback.mCount;
+    }
+
+    @Benchmark
+    public int[] getChangedGroups() {
+        return GroupArrayList.getChangedGroups(mOldGroupArrayList, mNewGroupArrayList);
+    }
+
+}
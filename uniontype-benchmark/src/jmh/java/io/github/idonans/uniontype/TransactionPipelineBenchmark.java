@@ -0,0 +1,167 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次提交从应用 action, 计算变化到分发的完整过程 (TransactionPipeline).
+ * 后台线程与主线程都在当前线程上直接执行, 只测量计算本身, 不包含线程切换的开销.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransactionPipelineBenchmark {
+
+    private static final int GROUP_COUNT = 16;
+    private static final int BATCH_SIZE = 16;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    private final BenchmarkItems.CountingListUpdateCallback mCallback = new BenchmarkItems.CountingListUpdateCallback();
+    private final List<Runnable> mPendingTasks = new ArrayList<>();
+
+    private TransactionPipeline mPipeline;
+    private TransactionPipeline mDeferredPipeline;
+    private List<UnionTypeItemObject> mReplaceItems;
+    /**
+     * 交替设置为同一分组的两份数据, 相差约 1% 的删除, 插入, 移动与内容变化
+     */
+    private List<UnionTypeItemObject> mGroupItemsA;
+    private List<UnionTypeItemObject> mGroupItemsB;
+    private final boolean[] mUseB = new boolean[GROUP_COUNT];
+    private int mGroup;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final int groupSize = size / GROUP_COUNT;
+        mPipeline = createPipeline(Runnable::run);
+        // 提交时只记录任务, 模拟后台线程繁忙时多个提交合并为一批
+        mDeferredPipeline = createPipeline(mPendingTasks::add);
+        for (TransactionPipeline pipeline : new TransactionPipeline[]{mPipeline, mDeferredPipeline}) {
+            final TransactionPipeline.Transaction transaction = pipeline.beginTransaction();
+            for (int group = 0; group < GROUP_COUNT; group++) {
+                transaction.setGroupItems(group, BenchmarkItems.createItems((long) group * groupSize, groupSize));
+            }
+            transaction.commit();
+        }
+        runPendingTasks();
+
+        mReplaceItems = BenchmarkItems.createItems(Long.MAX_VALUE / 2, 10);
+        mGroupItemsA = BenchmarkItems.createItems(0, groupSize);
+        mGroupItemsB = new ArrayList<>(mGroupItemsA);
+        final int changeCount = Math.max(1, groupSize / 100);
+        for (int i = 0; i < changeCount; i++) {
+            final int position = i * (groupSize / changeCount);
+            mGroupItemsB.set(position, new UnionTypeItemObject(1, new BenchmarkItems.Item(position, 1)));
+        }
+        mGroupItemsB.subList(0, changeCount).clear();
+        mGroupItemsB.addAll(mGroupItemsB.size() / 2, BenchmarkItems.createItems(Long.MAX_VALUE / 4, changeCount));
+        mGroupItemsB.add(mGroupItemsB.remove(mGroupItemsB.size() / 3));
+    }
+
+    @NonNull
+    private TransactionPipeline createPipeline(@NonNull Executor workerExecutor) {
+        final TransactionPipeline pipeline = new TransactionPipeline(mCallback, workerExecutor,
+                new TransactionPipeline.MainThreadDispatcher() {
+                    @Override
+                    public void post(@NonNull Runnable runnable) {
+                        runnable.run();
+                    }
+
+                    @Override
+                    public void postDelayed(@NonNull Runnable runnable, long delayMillis) {
+                        runnable.run();
+                    }
+                },
+                TransactionPipeline.ListDiffer.REPLACE);
+        pipeline.setDiffEngine(TransactionPipeline.DIFF_ENGINE_KEYED);
+        return pipeline;
+    }
+
+    private void runPendingTasks() {
+        for (int i = 0; i < mPendingTasks.size(); i++) {
+            mPendingTasks.get(i).run();
+        }
+        mPendingTasks.clear();
+    }
+
+    private int nextGroup() {
+        mGroup = (mGroup + 1) % GROUP_COUNT;
+        return mGroup;
+    }
+
+    @NonNull
+    private List<UnionTypeItemObject> nextGroupItems(int group) {
+        mUseB[group] = !mUseB[group];
+        return mUseB[group] ? mGroupItemsB : mGroupItemsA;
+    }
+
+    /**
+     * 内置的 action 直接记录变化区域, 不计算 diff. 只复制被修改的分组中被修改的块.
+     */
+    @Benchmark
+    public int replaceGroupItems() {
+        mPipeline.beginTransaction()
+                .replaceGroupItems(nextGroup(), 0, mReplaceItems)
+                .commit();
+        return mCallback.mCount;
+    }
+
+    /**
+     * 自定义 action 整体替换一个分组, 在该分组上计算 {@link KeyedDiff}
+     */
+    @Benchmark
+    public int customActionKeyedDiff() {
+        final int group = nextGroup();
+        final List<UnionTypeItemObject> groupItems = nextGroupItems(group);
+        mPipeline.beginTransaction()
+                .add((transaction, groupArrayList) -> groupArrayList.setGroupItems(group, groupItems))
+                .commit();
+        return mCallback.mCount;
+    }
+
+    /**
+     * 同上, 同时检测移动
+     */
+    @Benchmark
+    public int customActionKeyedDiffDetectMoves() {
+        final int group = nextGroup();
+        final List<UnionTypeItemObject> groupItems = nextGroupItems(group);
+        mPipeline.beginTransaction()
+                .setDetectMoves(true)
+                .add((transaction, groupArrayList) -> groupArrayList.setGroupItems(group, groupItems))
+                .commit();
+        return mCallback.mCount;
+    }
+
+    /**
+     * {@link #BATCH_SIZE} 个提交合并为一批应用与分发
+     */
+    @Benchmark
+    public int batchedCommits() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mDeferredPipeline.beginTransaction()
+                    .replaceGroupItems(nextGroup(), 0, Collections.singletonList(mReplaceItems.get(i % mReplaceItems.size())))
+                    .commit();
+        }
+        runPendingTasks();
+        return mCallback.mCount;
+    }
+
+}
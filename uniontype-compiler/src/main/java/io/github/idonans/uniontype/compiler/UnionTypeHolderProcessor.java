@@ -0,0 +1,238 @@
+package io.github.idonans.uniontype.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import io.github.idonans.uniontype.annotation.UnionTypeHolder;
+
+/**
+ * 处理 {@link UnionTypeHolder}, 为每一个 {@link UnionTypeHolder#mapper()} 生成一个基于 switch 的 UnionTypeMapper.
+ * <p>
+ * 同一个 mapper 的所有 ViewHolder 需要在同一个模块中声明. 生成的 mapper 同时实现 getDeclaredUnionTypes,
+ * 组合到 MultiUnionTypeMapper 中时可以预先建立分发表.
+ * <p>
+ * mapper 在收集到 ViewHolder 的同一个 round 中生成, 生成的源文件仍然可以参与后续 round 的处理.
+ * 因此同一个 mapper 的 ViewHolder 不能由其它注解处理器在之后的 round 中生成.
+ */
+public class UnionTypeHolderProcessor extends AbstractProcessor {
+
+    private static final String UNION_TYPE_VIEW_HOLDER = "io.github.idonans.uniontype.UnionTypeViewHolder";
+    private static final String HOST = "io.github.idonans.uniontype.Host";
+    private static final String UNION_TYPE_MAPPER = "io.github.idonans.uniontype.UnionTypeMapper";
+
+    private Elements mElements;
+    private Types mTypes;
+    private Filer mFiler;
+    private Messager mMessager;
+
+    /**
+     * 已经生成的 mapper 类名 -> 生成该 mapper 的 round 中收集到的 ViewHolder 之一, 用于报告之后 round 中的冲突
+     */
+    private final Map<String, TypeElement> mWrittenMappers = new TreeMap<>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mElements = processingEnv.getElementUtils();
+        mTypes = processingEnv.getTypeUtils();
+        mFiler = processingEnv.getFiler();
+        mMessager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(UnionTypeHolder.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        // mapper 类名 -> (unionType -> ViewHolder), 只包含本 round 收集到的 ViewHolder
+        final Map<String, TreeMap<Integer, TypeElement>> mappers = new TreeMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(UnionTypeHolder.class)) {
+            if (!checkViewHolder(element)) {
+                continue;
+            }
+
+            final TypeElement viewHolder = (TypeElement) element;
+            final UnionTypeHolder unionTypeHolder = viewHolder.getAnnotation(UnionTypeHolder.class);
+            final String mapper = unionTypeHolder.mapper().trim();
+            if (!SourceVersion.isName(mapper)) {
+                error(viewHolder, "invalid mapper class name: %s", mapper);
+                continue;
+            }
+            final TypeElement written = mWrittenMappers.get(mapper);
+            if (written != null) {
+                error(viewHolder, "%s is generated in a later round than %s, all view holders of %s must be available in the same round",
+                        viewHolder.getQualifiedName(), written.getQualifiedName(), mapper);
+                continue;
+            }
+
+            TreeMap<Integer, TypeElement> viewHolders = mappers.get(mapper);
+            if (viewHolders == null) {
+                viewHolders = new TreeMap<>();
+                mappers.put(mapper, viewHolders);
+            }
+            final TypeElement exists = viewHolders.get(unionTypeHolder.value());
+            if (exists != null) {
+                error(viewHolder, "duplicate unionType %s in %s, already used by %s",
+                        unionTypeHolder.value(), mapper, exists.getQualifiedName());
+                continue;
+            }
+            viewHolders.put(unionTypeHolder.value(), viewHolder);
+        }
+
+        for (Map.Entry<String, TreeMap<Integer, TypeElement>> entry : mappers.entrySet()) {
+            mWrittenMappers.put(entry.getKey(), entry.getValue().firstEntry().getValue());
+            writeMapper(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    private boolean checkViewHolder(Element element) {
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "@UnionTypeHolder can only be used on class");
+            return false;
+        }
+
+        final TypeElement typeElement = (TypeElement) element;
+        final Set<Modifier> modifiers = typeElement.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.ABSTRACT)) {
+            error(element, "%s must be public and not abstract", typeElement.getQualifiedName());
+            return false;
+        }
+        if (typeElement.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)) {
+            error(element, "%s must be static", typeElement.getQualifiedName());
+            return false;
+        }
+        if (typeElement.getNestingKind() == NestingKind.LOCAL || typeElement.getNestingKind() == NestingKind.ANONYMOUS) {
+            error(element, "%s must be a top level or member class", typeElement.getQualifiedName());
+            return false;
+        }
+
+        final TypeElement unionTypeViewHolder = mElements.getTypeElement(UNION_TYPE_VIEW_HOLDER);
+        if (unionTypeViewHolder != null
+                && !mTypes.isSubtype(typeElement.asType(), mTypes.erasure(unionTypeViewHolder.asType()))) {
+            error(element, "%s must extends %s", typeElement.getQualifiedName(), UNION_TYPE_VIEW_HOLDER);
+            return false;
+        }
+
+        if (!hasHostConstructor(typeElement)) {
+            error(element, "%s must have a public constructor with a single %s parameter",
+                    typeElement.getQualifiedName(), HOST);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean hasHostConstructor(TypeElement typeElement) {
+        final TypeElement host = mElements.getTypeElement(HOST);
+        for (Element enclosed : typeElement.getEnclosedElements()) {
+            if (enclosed.getKind() != ElementKind.CONSTRUCTOR || !enclosed.getModifiers().contains(Modifier.PUBLIC)) {
+                continue;
+            }
+            final ExecutableElement constructor = (ExecutableElement) enclosed;
+            if (constructor.getParameters().size() != 1) {
+                continue;
+            }
+            final TypeMirror parameterType = constructor.getParameters().get(0).asType();
+            if (host == null) {
+                // Host 不在 classpath 上时只能按名称比较
+                if (HOST.equals(mTypes.erasure(parameterType).toString())) {
+                    return true;
+                }
+            } else if (mTypes.isSameType(mTypes.erasure(parameterType), mTypes.erasure(host.asType()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeMapper(String mapper, TreeMap<Integer, TypeElement> viewHolders) {
+        final int lastDot = mapper.lastIndexOf('.');
+        final String packageName = lastDot > 0 ? mapper.substring(0, lastDot) : null;
+        final String simpleName = mapper.substring(lastDot + 1);
+
+        final StringBuilder builder = new StringBuilder();
+        if (packageName != null) {
+            builder.append("package ").append(packageName).append(";\n\n");
+        }
+        builder.append("/**\n")
+                .append(" * Generated by ").append(UnionTypeHolderProcessor.class.getName()).append(", do not edit.\n")
+                .append(" */\n")
+                .append("public final class ").append(simpleName).append(" implements ").append(UNION_TYPE_MAPPER).append(" {\n\n");
+
+        builder.append("    private static final int[] DECLARED_UNION_TYPES = {");
+        boolean first = true;
+        for (Integer unionType : viewHolders.keySet()) {
+            if (!first) {
+                builder.append(", ");
+            }
+            builder.append(unionType);
+            first = false;
+        }
+        builder.append("};\n\n");
+
+        builder.append("    @Override\n")
+                .append("    public ").append(UNION_TYPE_VIEW_HOLDER).append(" map(").append(HOST).append(" host, int unionType) {\n")
+                .append("        switch (unionType) {\n");
+        for (Map.Entry<Integer, TypeElement> entry : viewHolders.entrySet()) {
+            builder.append("            case ").append(entry.getKey()).append(":\n")
+                    .append("                return new ").append(entry.getValue().getQualifiedName()).append("(host);\n");
+        }
+        builder.append("            default:\n")
+                .append("                return null;\n")
+                .append("        }\n")
+                .append("    }\n\n");
+
+        builder.append("    @Override\n")
+                .append("    public int[] getDeclaredUnionTypes() {\n")
+                .append("        return DECLARED_UNION_TYPES.clone();\n")
+                .append("    }\n\n")
+                .append("}\n");
+
+        final List<Element> originatingElements = new ArrayList<>(new LinkedHashSet<>(viewHolders.values()));
+        try {
+            final JavaFileObject sourceFile = mFiler.createSourceFile(mapper, originatingElements.toArray(new Element[0]));
+            try (Writer writer = sourceFile.openWriter()) {
+                writer.write(builder.toString());
+            }
+        } catch (IOException e) {
+            mMessager.printMessage(Diagnostic.Kind.ERROR, "fail to write " + mapper + ": " + e);
+        }
+    }
+
+    private void error(Element element, String format, Object... args) {
+        mMessager.printMessage(Diagnostic.Kind.ERROR, String.format(format, args), element);
+    }
+
+}
@@ -0,0 +1,38 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.Nullable;
+
+/**
+ * {@linkplain androidx.recyclerview.widget.DiffUtil}
+ */
+public interface DeepDiff {
+
+    boolean isSameItem(@Nullable Object other);
+
+    /**
+     * 可选的预先比较: diff 开始前对每个数据计算一次, 两个都实现了 DeepDiff 的数据的值都不为 0 并且不相等时,
+     * 直接认为不是同一个数据而不再调用 {@link #isSameItem(Object)}.
+     * 因此 {@link #isSameItem(Object)} 返回 true 的两个对象必须返回相同的值.
+     *
+     * @return 数据标识的 hash, 返回 0 表示不参与预先比较. 默认返回 0.
+     */
+    default int getItemHashCode() {
+        return 0;
+    }
+
+    boolean isSameContent(@Nullable Object other);
+
+    /**
+     * 在 {@link #isSameItem(Object)} 返回 true 而 {@link #isSameContent(Object)} 返回 false 时调用,
+     * 返回的 payload 会传递给 {@link UnionTypeViewHolder#onBindUpdate(java.util.List)}, 用于只刷新发生变化的部分.
+     *
+     * @param other 新的数据 (当前对象是旧的数据)
+     * @return 描述变化的 payload, 返回 null 时 ViewHolder 会完整刷新. 默认返回 null.
+     * @see androidx.recyclerview.widget.DiffUtil.Callback#getChangePayload(int, int)
+     */
+    @Nullable
+    default Object getChangePayload(@Nullable Object other) {
+        return null;
+    }
+
+}
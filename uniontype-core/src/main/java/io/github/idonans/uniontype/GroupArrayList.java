@@ -0,0 +1,1061 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.SparseArrayCompat;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 按分组保存数据．组内数据以写时复制 (copy-on-write) 的方式在副本之间共享:
+ * 通过 {@link #GroupArrayList(GroupArrayList)} 创建的副本与原数据共享所有分组,
+ * 之后任何一方修改某个分组时才复制该分组的块列表以及被修改的块 (组内数据按块保存, 见 ArrayListWrapper),
+ * 未修改的分组与块不会被复制．
+ */
+public class GroupArrayList {
+
+    @NonNull
+    private final SparseArrayCompat<ArrayListWrapper> mData;
+
+    /**
+     * 分组数据量的前缀和索引 (Fenwick tree), 第 i 个分组 (按 mData 中的下标) 对应 mGroupSizeTree[i + 1].
+     * 分组的增删会使索引失效并在下次查询时整体重建, 组内数据量的变化在 O(log G) 内增量更新.
+     */
+    @NonNull
+    private int[] mGroupSizeTree = EMPTY_INT_ARRAY;
+    /**
+     * 索引中记录的每个分组的数据量, 下标与 mData 一致
+     */
+    @NonNull
+    private int[] mGroupSizes = EMPTY_INT_ARRAY;
+    private int mGroupSizeTreeHighestBit;
+    private int mTotalSize;
+    private boolean mIndexInvalid = true;
+
+    private static final int[] EMPTY_INT_ARRAY = new int[0];
+
+    GroupArrayList() {
+        this(null);
+    }
+
+    /**
+     * 创建一个与 input 共享所有分组的副本, O(G). 双方的分组在被修改时才会复制.
+     */
+    GroupArrayList(@Nullable GroupArrayList input) {
+        if (input == null) {
+            mData = new SparseArrayCompat<>();
+            return;
+        }
+
+        input.share();
+        mData = input.mData.clone();
+        if (!input.mIndexInvalid) {
+            mGroupSizeTree = input.mGroupSizeTree.clone();
+            mGroupSizes = input.mGroupSizes.clone();
+            mGroupSizeTreeHighestBit = input.mGroupSizeTreeHighestBit;
+            mTotalSize = input.mTotalSize;
+            mIndexInvalid = false;
+        }
+    }
+
+    /**
+     * 将所有分组标记为共享, 之后对任一分组的修改都会先复制该分组.
+     * 用于在快照发布之后保证其内容不再变化.
+     */
+    void share() {
+        int size = mData.size();
+        for (int i = 0; i < size; i++) {
+            final ArrayListWrapper groupItems = mData.valueAt(i);
+            if (groupItems != null && !groupItems.mShared) {
+                groupItems.share();
+            }
+        }
+    }
+
+    /**
+     * 返回的数据可以直接修改. 如果该分组当前与其它副本共享, 会先复制该分组.
+     *
+     * @param group 分组
+     * @return 获取指定分组
+     */
+    @Nullable
+    public List<UnionTypeItemObject> getGroupItems(int group) {
+        return getGroupItemsForWrite(group);
+    }
+
+    /**
+     * @param group 分组
+     * @return 获得指定组下的数据数量，如果该组下没有数据，返回 0．
+     */
+    public int getGroupItemsSize(int group) {
+        final ArrayListWrapper groupItems = mData.get(group);
+        if (groupItems == null) {
+            return 0;
+        }
+
+        return groupItems.size();
+    }
+
+    /**
+     * 清空指定组下的数据
+     *
+     * @param group 分组
+     */
+    public void clearGroupItems(int group) {
+        final int index = mData.indexOfKey(group);
+        if (index < 0) {
+            return;
+        }
+
+        final ArrayListWrapper groupItems = mData.valueAt(index);
+        if (groupItems == null || groupItems.isEmpty()) {
+            return;
+        }
+
+        if (groupItems.mShared) {
+            // 共享的分组无需复制, 直接替换为空分组
+            final ArrayListWrapper emptyGroupItems = new ArrayListWrapper(this, group, Collections.<UnionTypeItemObject>emptyList());
+            mData.setValueAt(index, emptyGroupItems);
+            onGroupSizeChanged(emptyGroupItems);
+            return;
+        }
+
+        groupItems.clear();
+    }
+
+    /**
+     * 删除指定组
+     *
+     * @param group 分组
+     */
+    public void removeGroup(int group) {
+        final int index = mData.indexOfKey(group);
+        if (index < 0) {
+            return;
+        }
+
+        final ArrayListWrapper groupItems = mData.valueAt(index);
+        if (groupItems != null) {
+            groupItems.detach();
+        }
+        mData.removeAt(index);
+        mIndexInvalid = true;
+    }
+
+    /**
+     * @param group 分组
+     * @return 获取指定组在全局所在的开始位置, 总是 <code>&gt;= 0</code>
+     */
+    public int getGroupPositionStart(int group) {
+        ensureIndex();
+
+        int index = mData.indexOfKey(group);
+        if (index < 0) {
+            // 该组不存在时, 返回其插入位置之前所有分组的数据量
+            index = ~index;
+        }
+        return getGroupSizePrefixSum(index);
+    }
+
+    /**
+     * 清除指定组下指定位置的数据
+     *
+     * @param group           分组
+     * @param positionInGroup 组内的位置
+     * @return 被删除的目标位置的值
+     */
+    @Nullable
+    public UnionTypeItemObject removeGroupItem(int group, int positionInGroup) {
+        if (positionInGroup < 0) {
+            return null;
+        }
+
+        if (getGroupItemsSize(group) <= positionInGroup) {
+            return null;
+        }
+
+        final ArrayListWrapper groupItems = getGroupItemsForWrite(group);
+        if (groupItems == null) {
+            return null;
+        }
+
+        return groupItems.remove(positionInGroup);
+    }
+
+    /**
+     * 清除指定组下指定位置区域的数据
+     *
+     * @param group           分组
+     * @param positionInGroup 组内的位置
+     * @param size            删除的数量
+     */
+    public void removeGroupItems(int group, int positionInGroup, int size) {
+        if (positionInGroup < 0) {
+            return;
+        }
+
+        if (size <= 0) {
+            return;
+        }
+
+        if (getGroupItemsSize(group) <= positionInGroup) {
+            return;
+        }
+
+        final ArrayListWrapper groupItems = getGroupItemsForWrite(group);
+        if (groupItems == null) {
+            return;
+        }
+
+        if (groupItems.size() < positionInGroup + size) {
+            if (groupItems.size() > positionInGroup) {
+                groupItems.removeRangeWrapper(positionInGroup, groupItems.size() - positionInGroup);
+            }
+            return;
+        }
+
+        groupItems.removeRangeWrapper(positionInGroup, size);
+    }
+
+    /**
+     * {@link #getGroupAndPositionPacked(int)} 未找到指定位置时的返回值
+     */
+    public static final long NO_GROUP_AND_POSITION = -1L;
+
+    /**
+     * <pre>
+     * 获取指定位置所在的组以及组内的位置，如果该位置没有找到，返回 <code>null</code>.
+     * 否则返回一个长度为 2 的整数数组，其中
+     * [0] 标识所在的组，总是 <code>&gt;= 0</code>
+     * [1] 标识在该组内所处的位置，总是 <code>&gt;= 0</code>
+     *
+     * 使用示例：
+     * <code>
+     *
+     * int[] groupAndPosition = getGroupAndPosition(13);
+     * if(groupAndPosition != null) {
+     *     int group = groupAndPosition[0];
+     *     int positionInGroup = groupAndPosition[1];
+     * } else {
+     *     // item not found
+     * }
+     *
+     * </code>
+     *
+     * 每次调用都会创建新的数组，频繁调用的场景请使用 {@link #getGroupAndPositionPacked(int)}
+     * </pre>
+     *
+     * @param position 全局位置
+     * @return 指定位置所在的组以及组内的位置
+     */
+    public int[] getGroupAndPosition(int position) {
+        final long groupAndPosition = getGroupAndPositionPacked(position);
+        if (groupAndPosition == NO_GROUP_AND_POSITION) {
+            return null;
+        }
+        return new int[]{unpackGroup(groupAndPosition), unpackPositionInGroup(groupAndPosition)};
+    }
+
+    /**
+     * <pre>
+     * 与 {@link #getGroupAndPosition(int)} 相同，但不会创建对象．所在的组与组内的位置被编码在一个 long 中，
+     * 如果该位置没有找到，返回 {@link #NO_GROUP_AND_POSITION}．
+     *
+     * 使用示例：
+     * <code>
+     *
+     * long groupAndPosition = getGroupAndPositionPacked(13);
+     * if(groupAndPosition != GroupArrayList.NO_GROUP_AND_POSITION) {
+     *     int group = GroupArrayList.unpackGroup(groupAndPosition);
+     *     int positionInGroup = GroupArrayList.unpackPositionInGroup(groupAndPosition);
+     * } else {
+     *     // item not found
+     * }
+     *
+     * </code>
+     * </pre>
+     *
+     * @param position 全局位置
+     * @return 指定位置所在的组以及组内的位置
+     */
+    public long getGroupAndPositionPacked(int position) {
+        final long indexAndPosition = findGroupIndexAndPosition(position);
+        if (indexAndPosition == NO_GROUP_AND_POSITION) {
+            return NO_GROUP_AND_POSITION;
+        }
+        return pack(mData.keyAt(unpackGroup(indexAndPosition)), unpackPositionInGroup(indexAndPosition));
+    }
+
+    /**
+     * @param groupAndPosition {@link #getGroupAndPositionPacked(int)} 的返回值
+     * @return 所在的组
+     */
+    public static int unpackGroup(long groupAndPosition) {
+        return (int) (groupAndPosition >> 32);
+    }
+
+    /**
+     * @param groupAndPosition {@link #getGroupAndPositionPacked(int)} 的返回值
+     * @return 在该组内所处的位置
+     */
+    public static int unpackPositionInGroup(long groupAndPosition) {
+        return (int) groupAndPosition;
+    }
+
+    static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param position 全局位置
+     * @return 所在分组在 mData 中的下标以及组内的位置 (编码方式同 {@link #getGroupAndPositionPacked(int)}),
+     * 如果没有找到，返回 {@link #NO_GROUP_AND_POSITION}
+     */
+    private long findGroupIndexAndPosition(int position) {
+        if (position < 0) {
+            return NO_GROUP_AND_POSITION;
+        }
+
+        ensureIndex();
+        if (position >= mTotalSize) {
+            return NO_GROUP_AND_POSITION;
+        }
+
+        // 在前缀和索引上二分查找 position 所在的分组, 找到的是前缀和不超过 position 的最大分组数
+        int index = 0;
+        int positionInGroup = position;
+        final int groupCount = mGroupSizes.length;
+        for (int bit = mGroupSizeTreeHighestBit; bit != 0; bit >>= 1) {
+            final int next = index + bit;
+            if (next <= groupCount && mGroupSizeTree[next] <= positionInGroup) {
+                index = next;
+                positionInGroup -= mGroupSizeTree[next];
+            }
+        }
+
+        // position在第index组内的positionInGroup位置
+        return pack(index, positionInGroup);
+    }
+
+    /**
+     * 清除指定位置的数据
+     *
+     * @param position 全局位置
+     */
+    public void removeItem(int position) {
+        final long groupAndPosition = getGroupAndPositionPacked(position);
+        if (groupAndPosition == NO_GROUP_AND_POSITION) {
+            return;
+        }
+
+        removeGroupItem(unpackGroup(groupAndPosition), unpackPositionInGroup(groupAndPosition));
+    }
+
+    /**
+     * 清除指定位置附近的数据.
+     * Filter 用来匹配需要删除的数据，所删除的数据总是在同一组并且相邻
+     *
+     * @param position 全局位置
+     * @param filter   待删除的元素的条件选择器
+     */
+    public void removeItems(int position, Predicate<UnionTypeItemObject> filter) {
+        final long groupAndPosition = getGroupAndPositionPacked(position);
+        if (groupAndPosition == NO_GROUP_AND_POSITION) {
+            return;
+        }
+
+        final int group = unpackGroup(groupAndPosition);
+        final int positionInGroup = unpackPositionInGroup(groupAndPosition);
+        final int groupItemsSize = getGroupItemsSize(group);
+        // 根据 position 确定删除的区域
+
+        // 搜寻开始位置
+        int start = -1;
+        for (int i = positionInGroup; i >= 0; i--) {
+            UnionTypeItemObject item = getGroupItem(group, i);
+            if (!filter.test(item)) {
+                break;
+            }
+            start = i;
+        }
+
+        if (start < 0) {
+            return;
+        }
+
+        int end = positionInGroup;
+        for (int i = end + 1; i < groupItemsSize; i++) {
+            UnionTypeItemObject item = getGroupItem(group, i);
+            if (!filter.test(item)) {
+                break;
+            }
+            end = i;
+        }
+
+        // 删除[start, end]区间的数据
+        removeGroupItems(group, start, end - start + 1);
+    }
+
+    /**
+     * 清除所有数据(保留分组)
+     */
+    public void clearAllGroupItems() {
+        int size = mData.size();
+        for (int i = 0; i < size; i++) {
+            clearGroupItems(mData.keyAt(i));
+        }
+    }
+
+    /**
+     * 删除所有数据(包括分组)
+     */
+    public void removeAll() {
+        int size = mData.size();
+        for (int i = 0; i < size; i++) {
+            final ArrayListWrapper groupItems = mData.valueAt(i);
+            if (groupItems != null) {
+                groupItems.detach();
+            }
+        }
+        mData.clear();
+        mIndexInvalid = true;
+    }
+
+    public int size() {
+        ensureIndex();
+        return mTotalSize;
+    }
+
+    /**
+     * @param group 分组
+     * @param items 组内数据
+     */
+    public void setGroupItems(int group, @Nullable Collection<UnionTypeItemObject> items) {
+        if (items == null) {
+            clearGroupItems(group);
+        } else {
+            putGroupItems(group, items);
+        }
+    }
+
+    /**
+     * 向指定组中的指定位置添加数据
+     *
+     * @param group           分组
+     * @param positionInGroup 组内的位置
+     * @param items           待添加的数据
+     */
+    public void insertGroupItems(int group, int positionInGroup, @Nullable Collection<UnionTypeItemObject> items) {
+        if (items != null && items.size() > 0) {
+            final ArrayListWrapper groupItems = getGroupItemsForWrite(group);
+            if (groupItems == null) {
+                putGroupItems(group, items);
+                return;
+            }
+
+            if (positionInGroup <= 0) {
+                groupItems.addAll(0, items);
+                return;
+            }
+
+            if (positionInGroup > groupItems.size()) {
+                positionInGroup = groupItems.size();
+            }
+            groupItems.addAll(positionInGroup, items);
+        }
+    }
+
+    /**
+     * 向指定组中添加数据
+     *
+     * @param group 分组
+     * @param items 待添加的数据
+     */
+    public void appendGroupItems(int group, @Nullable Collection<UnionTypeItemObject> items) {
+        if (items != null && items.size() > 0) {
+            final ArrayListWrapper groupItems = getGroupItemsForWrite(group);
+            if (groupItems == null) {
+                putGroupItems(group, items);
+                return;
+            }
+
+            groupItems.addAll(items);
+        }
+    }
+
+    /**
+     * @param group           分组
+     * @param positionInGroup 组内的位置
+     * @return 如果没有找到，返回 <code>null</code>.
+     */
+    @Nullable
+    public UnionTypeItemObject getGroupItem(int group, int positionInGroup) {
+        if (positionInGroup < 0) {
+            return null;
+        }
+
+        final ArrayListWrapper groupItems = mData.get(group);
+        if (groupItems == null) {
+            return null;
+        }
+
+        if (groupItems.size() <= positionInGroup) {
+            return null;
+        }
+
+        return groupItems.get(positionInGroup);
+    }
+
+    /**
+     * @param position 全局位置
+     * @return 如果没有找到，返回 <code>null</code>.
+     */
+    @Nullable
+    public UnionTypeItemObject getItem(int position) {
+        final long indexAndPosition = findGroupIndexAndPosition(position);
+        if (indexAndPosition == NO_GROUP_AND_POSITION) {
+            return null;
+        }
+
+        // 找到的分组一定非空且组内位置有效, 直接按下标读取, 无需再次按分组查找
+        return mData.valueAt(unpackGroup(indexAndPosition)).get(unpackPositionInGroup(indexAndPosition));
+    }
+
+    /**
+     * 与 {@link #getGroupItems(int)} 不同, 不会复制共享的分组, 返回的数据不可修改.
+     *
+     * @param group 分组
+     * @return 获取指定分组, 如果该组不存在返回 null.
+     */
+    @Nullable
+    List<UnionTypeItemObject> peekGroupItems(int group) {
+        return mData.get(group);
+    }
+
+    /**
+     * @return 按全局位置排列的所有数据的副本, O(N)
+     */
+    @NonNull
+    List<UnionTypeItemObject> toList() {
+        final List<UnionTypeItemObject> items = new ArrayList<>(size());
+        int size = mData.size();
+        for (int i = 0; i < size; i++) {
+            final ArrayListWrapper groupItems = mData.valueAt(i);
+            if (groupItems != null) {
+                items.addAll(groupItems);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 比较两个 GroupArrayList 中每个分组是否仍然共享同一份数据. 在写时复制的前提下,
+     * 没有被修改过的分组总是共享的, 因此结果包含了所有被修改过的分组 (以及被读取为可写但内容未变的分组).
+     *
+     * @return 所有不再共享同一份数据的分组, 按分组从小到大排列. 在两边都为空的分组不会被包含.
+     */
+    @NonNull
+    static int[] getChangedGroups(@NonNull GroupArrayList oldList, @NonNull GroupArrayList newList) {
+        final SparseArrayCompat<ArrayListWrapper> oldData = oldList.mData;
+        final SparseArrayCompat<ArrayListWrapper> newData = newList.mData;
+        final int oldSize = oldData.size();
+        final int newSize = newData.size();
+        final int[] changedGroups = new int[oldSize + newSize];
+        int changedCount = 0;
+
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < oldSize || newIndex < newSize) {
+            final int oldGroup = oldIndex < oldSize ? oldData.keyAt(oldIndex) : Integer.MAX_VALUE;
+            final int newGroup = newIndex < newSize ? newData.keyAt(newIndex) : Integer.MAX_VALUE;
+            final int group;
+            ArrayListWrapper oldGroupItems = null;
+            ArrayListWrapper newGroupItems = null;
+            if (oldIndex < oldSize && (newIndex >= newSize || oldGroup <= newGroup)) {
+                group = oldGroup;
+                oldGroupItems = oldData.valueAt(oldIndex++);
+                if (newIndex < newSize && newGroup == oldGroup) {
+                    newGroupItems = newData.valueAt(newIndex++);
+                }
+            } else {
+                group = newGroup;
+                newGroupItems = newData.valueAt(newIndex++);
+            }
+
+            if (oldGroupItems == newGroupItems) {
+                continue;
+            }
+            final boolean oldEmpty = oldGroupItems == null || oldGroupItems.isEmpty();
+            final boolean newEmpty = newGroupItems == null || newGroupItems.isEmpty();
+            if (oldEmpty && newEmpty) {
+                continue;
+            }
+            changedGroups[changedCount++] = group;
+        }
+
+        return Arrays.copyOf(changedGroups, changedCount);
+    }
+
+    /**
+     * @return 可以直接修改的分组. 如果该分组当前与其它副本共享, 先复制该分组. 分组不存在时返回 null.
+     */
+    @Nullable
+    private ArrayListWrapper getGroupItemsForWrite(int group) {
+        final int index = mData.indexOfKey(group);
+        if (index < 0) {
+            return null;
+        }
+
+        ArrayListWrapper groupItems = mData.valueAt(index);
+        if (groupItems != null && groupItems.mShared) {
+            // 复制后数据量不变, 前缀和索引无需更新
+            groupItems = new ArrayListWrapper(this, group, groupItems);
+            mData.setValueAt(index, groupItems);
+        }
+        return groupItems;
+    }
+
+    private void putGroupItems(int group, @NonNull Collection<UnionTypeItemObject> items) {
+        final ArrayListWrapper groupItems = new ArrayListWrapper(this, group, items);
+        final int index = mData.indexOfKey(group);
+        if (index < 0) {
+            mData.put(group, groupItems);
+            mIndexInvalid = true;
+            return;
+        }
+
+        final ArrayListWrapper oldGroupItems = mData.valueAt(index);
+        if (oldGroupItems != null) {
+            oldGroupItems.detach();
+        }
+        mData.setValueAt(index, groupItems);
+        onGroupSizeChanged(groupItems);
+    }
+
+    /**
+     * 如果前缀和索引已失效, 重建索引. O(G)
+     */
+    private void ensureIndex() {
+        if (!mIndexInvalid) {
+            return;
+        }
+
+        final int groupCount = mData.size();
+        if (mGroupSizes.length != groupCount) {
+            mGroupSizes = new int[groupCount];
+            mGroupSizeTree = new int[groupCount + 1];
+        } else {
+            Arrays.fill(mGroupSizeTree, 0);
+        }
+
+        int totalSize = 0;
+        for (int i = 0; i < groupCount; i++) {
+            final ArrayListWrapper groupItems = mData.valueAt(i);
+            final int groupSize = groupItems == null ? 0 : groupItems.size();
+            mGroupSizes[i] = groupSize;
+            totalSize += groupSize;
+
+            final int treeIndex = i + 1;
+            mGroupSizeTree[treeIndex] += groupSize;
+            final int parent = treeIndex + (treeIndex & -treeIndex);
+            if (parent <= groupCount) {
+                mGroupSizeTree[parent] += mGroupSizeTree[treeIndex];
+            }
+        }
+        mGroupSizeTreeHighestBit = Integer.highestOneBit(groupCount);
+        mTotalSize = totalSize;
+        mIndexInvalid = false;
+    }
+
+    /**
+     * @param groupCount 分组数量(按 mData 中的下标)
+     * @return 前 groupCount 个分组的数据量之和
+     */
+    private int getGroupSizePrefixSum(int groupCount) {
+        int sum = 0;
+        for (int i = groupCount; i > 0; i -= i & -i) {
+            sum += mGroupSizeTree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 组内数据量变化时将差值更新到前缀和索引中. O(log G)
+     */
+    private void onGroupSizeChanged(@NonNull ArrayListWrapper groupItems) {
+        if (mIndexInvalid) {
+            return;
+        }
+
+        final int index = mData.indexOfKey(groupItems.mGroup);
+        if (index < 0 || mData.valueAt(index) != groupItems) {
+            mIndexInvalid = true;
+            return;
+        }
+
+        final int delta = groupItems.size() - mGroupSizes[index];
+        if (delta == 0) {
+            return;
+        }
+
+        mGroupSizes[index] += delta;
+        mTotalSize += delta;
+        final int groupCount = mGroupSizes.length;
+        for (int i = index + 1; i <= groupCount; i += i & -i) {
+            mGroupSizeTree[i] += delta;
+        }
+    }
+
+    /**
+     * 组内数据按块保存, 每块最多 {@link #MAX_CHUNK_SIZE} 个. 写时复制以块为单位: 复制一个共享的分组只复制块的列表,
+     * 之后修改某个位置时才复制该位置所在的块, 因此在大分组中替换或追加少量数据的开销与分组的数据量基本无关.
+     * <p>
+     * 所有改变数据量的操作 (包括通过 subList 与迭代器进行的修改) 都会通知所属的 GroupArrayList 更新前缀和索引,
+     * 因此通过 {@link #getGroupItems(int)} 直接修改组内数据也能保持索引正确.
+     * <p>
+     * 被标记为共享之后不允许再修改, 修改操作会抛出 {@link UnsupportedOperationException}.
+     */
+    private static final class ArrayListWrapper extends AbstractList<UnionTypeItemObject> implements RandomAccess {
+
+        private static final int MAX_CHUNK_SIZE = 512;
+
+        @Nullable
+        private GroupArrayList mOwner;
+        private final int mGroup;
+        /**
+         * 是否与其它副本共享. 共享之后不会再被修改
+         */
+        private boolean mShared;
+
+        /**
+         * 所有块都不为空
+         */
+        @NonNull
+        private final ArrayList<Chunk> mChunks;
+        private int mSize;
+        /**
+         * mChunkStarts[i] 为第 i 个块在组内的开始位置. 块的增删使其失效并在下次按位置访问时重建 (总是创建新的数组,
+         * 因此可以在副本之间共享). 共享之前总是已经建立, 之后按位置读取不会再修改任何字段, 可以在任意线程上访问.
+         */
+        @NonNull
+        private int[] mChunkStarts = EMPTY_INT_ARRAY;
+        private boolean mChunkStartsInvalid = true;
+
+        private ArrayListWrapper(@NonNull GroupArrayList owner, int group, @NonNull Collection<UnionTypeItemObject> collection) {
+            mOwner = owner;
+            mGroup = group;
+            final Object[] items = collection.toArray();
+            mChunks = new ArrayList<>(items.length / MAX_CHUNK_SIZE + 1);
+            addChunks(0, items, 0, items.length);
+            mSize = items.length;
+        }
+
+        /**
+         * 复制一个共享的分组, O(块数). 所有块仍然共享, 被修改时才复制
+         */
+        private ArrayListWrapper(@NonNull GroupArrayList owner, int group, @NonNull ArrayListWrapper source) {
+            mOwner = owner;
+            mGroup = group;
+            mChunks = new ArrayList<>(source.mChunks);
+            for (Chunk chunk : mChunks) {
+                chunk.mShared = true;
+            }
+            mSize = source.mSize;
+            mChunkStarts = source.mChunkStarts;
+            mChunkStartsInvalid = source.mChunkStartsInvalid;
+        }
+
+        /**
+         * 标记为共享, 同时建立块的索引. 共享之后不会再被修改, 也就不再需要通知所属的 GroupArrayList,
+         * 解除引用以免之后的副本经由共享的分组一直持有之前的所有版本.
+         */
+        private void share() {
+            mShared = true;
+            mOwner = null;
+            for (Chunk chunk : mChunks) {
+                chunk.mShared = true;
+            }
+            ensureChunkStarts();
+        }
+
+        /**
+         * 该分组已经从所属的 GroupArrayList 中移除, 之后的修改不再影响索引
+         */
+        private void detach() {
+            mOwner = null;
+        }
+
+        private void checkNotShared() {
+            if (mShared) {
+                throw new UnsupportedOperationException("group " + mGroup + " is shared with a snapshot and can not be modified");
+            }
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= mSize) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+            }
+        }
+
+        private void onStructureChanged() {
+            modCount++;
+            mChunkStartsInvalid = true;
+            if (mOwner != null) {
+                mOwner.onGroupSizeChanged(this);
+            }
+        }
+
+        private void ensureChunkStarts() {
+            if (!mChunkStartsInvalid) {
+                return;
+            }
+
+            final int chunkCount = mChunks.size();
+            final int[] chunkStarts = new int[chunkCount + 1];
+            for (int i = 0; i < chunkCount; i++) {
+                chunkStarts[i + 1] = chunkStarts[i] + mChunks.get(i).mSize;
+            }
+            mChunkStarts = chunkStarts;
+            mChunkStartsInvalid = false;
+        }
+
+        /**
+         * @param index 组内的有效位置
+         * @return 包含该位置的块的下标
+         */
+        private int findChunk(int index) {
+            ensureChunkStarts();
+            int low = 0;
+            int high = mChunks.size() - 1;
+            while (low < high) {
+                final int mid = (low + high + 1) >>> 1;
+                if (mChunkStarts[mid] <= index) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return 可以直接修改的块. 如果该块当前与其它副本共享, 先复制该块.
+         */
+        @NonNull
+        private Chunk getChunkForWrite(int chunkIndex) {
+            Chunk chunk = mChunks.get(chunkIndex);
+            if (chunk.mShared) {
+                chunk = new Chunk(chunk.mItems, 0, chunk.mSize);
+                mChunks.set(chunkIndex, chunk);
+            }
+            return chunk;
+        }
+
+        /**
+         * 把 items 中 [from, from + count) 按 {@link #MAX_CHUNK_SIZE} 分块, 插入到第 chunkIndex 个块之前
+         */
+        private void addChunks(int chunkIndex, @NonNull Object[] items, int from, int count) {
+            if (count <= 0) {
+                return;
+            }
+            final List<Chunk> chunks = new ArrayList<>(count / MAX_CHUNK_SIZE + 1);
+            for (int offset = 0; offset < count; offset += MAX_CHUNK_SIZE) {
+                chunks.add(new Chunk(items, from + offset, Math.min(MAX_CHUNK_SIZE, count - offset)));
+            }
+            mChunks.addAll(chunkIndex, chunks);
+        }
+
+        private void removeRangeWrapper(int fromIndex, int size) {
+            removeRange(fromIndex, fromIndex + size);
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        @Override
+        public UnionTypeItemObject get(int index) {
+            checkIndex(index);
+            final int chunkIndex = findChunk(index);
+            return mChunks.get(chunkIndex).get(index - mChunkStarts[chunkIndex]);
+        }
+
+        @Override
+        public UnionTypeItemObject set(int index, UnionTypeItemObject element) {
+            checkNotShared();
+            checkIndex(index);
+            final int chunkIndex = findChunk(index);
+            return getChunkForWrite(chunkIndex).set(index - mChunkStarts[chunkIndex], element);
+        }
+
+        @Override
+        public void add(int index, UnionTypeItemObject element) {
+            addAll(index, Collections.singletonList(element));
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends UnionTypeItemObject> c) {
+            return addAll(mSize, c);
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends UnionTypeItemObject> c) {
+            checkNotShared();
+            if (index < 0 || index > mSize) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+            }
+            final Object[] items = c.toArray();
+            if (items.length == 0) {
+                return false;
+            }
+
+            final int chunkCount = mChunks.size();
+            if (index == mSize) {
+                // 追加: 先填满最后一个块, 剩余的数据作为新的块
+                int offset = 0;
+                if (chunkCount > 0) {
+                    final int room = MAX_CHUNK_SIZE - mChunks.get(chunkCount - 1).mSize;
+                    if (room > 0) {
+                        offset = Math.min(room, items.length);
+                        getChunkForWrite(chunkCount - 1).insert(-1, items, offset);
+                    }
+                }
+                addChunks(mChunks.size(), items, offset, items.length - offset);
+            } else {
+                final int chunkIndex = findChunk(index);
+                final Chunk chunk = mChunks.get(chunkIndex);
+                final int offsetInChunk = index - mChunkStarts[chunkIndex];
+                if (chunk.mSize + items.length <= MAX_CHUNK_SIZE) {
+                    getChunkForWrite(chunkIndex).insert(offsetInChunk, items, items.length);
+                } else {
+                    // 该块放不下时, 把该块与插入的数据合并之后重新分块
+                    final Object[] merged = new Object[chunk.mSize + items.length];
+                    System.arraycopy(chunk.mItems, 0, merged, 0, offsetInChunk);
+                    System.arraycopy(items, 0, merged, offsetInChunk, items.length);
+                    System.arraycopy(chunk.mItems, offsetInChunk, merged, offsetInChunk + items.length, chunk.mSize - offsetInChunk);
+                    mChunks.remove(chunkIndex);
+                    addChunks(chunkIndex, merged, 0, merged.length);
+                }
+            }
+            mSize += items.length;
+            onStructureChanged();
+            return true;
+        }
+
+        @Override
+        public UnionTypeItemObject remove(int index) {
+            final UnionTypeItemObject result = get(index);
+            removeRange(index, index + 1);
+            return result;
+        }
+
+        @Override
+        public void clear() {
+            checkNotShared();
+            if (mSize == 0) {
+                return;
+            }
+            mChunks.clear();
+            mSize = 0;
+            onStructureChanged();
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            checkNotShared();
+            if (fromIndex >= toIndex) {
+                return;
+            }
+            checkIndex(fromIndex);
+            checkIndex(toIndex - 1);
+
+            final int firstChunkIndex = findChunk(fromIndex);
+            final int lastChunkIndex = findChunk(toIndex - 1);
+            final int headSize = fromIndex - mChunkStarts[firstChunkIndex];
+            final int tailOffset = toIndex - mChunkStarts[lastChunkIndex];
+            final Chunk lastChunk = mChunks.get(lastChunkIndex);
+            final int tailSize = lastChunk.mSize - tailOffset;
+            if (headSize == 0 && tailSize == 0) {
+                mChunks.subList(firstChunkIndex, lastChunkIndex + 1).clear();
+            } else if (firstChunkIndex == lastChunkIndex) {
+                getChunkForWrite(firstChunkIndex).removeRange(headSize, tailOffset);
+            } else {
+                // 保留第一个块的头部与最后一个块的尾部, 合并之后重新分块, 中间的块整体删除
+                final Object[] rest = new Object[headSize + tailSize];
+                System.arraycopy(mChunks.get(firstChunkIndex).mItems, 0, rest, 0, headSize);
+                System.arraycopy(lastChunk.mItems, tailOffset, rest, headSize, tailSize);
+                mChunks.subList(firstChunkIndex, lastChunkIndex + 1).clear();
+                addChunks(firstChunkIndex, rest, 0, rest.length);
+            }
+            mSize -= toIndex - fromIndex;
+            onStructureChanged();
+        }
+
+        @NonNull
+        @Override
+        public Object[] toArray() {
+            final Object[] items = new Object[mSize];
+            int position = 0;
+            for (Chunk chunk : mChunks) {
+                System.arraycopy(chunk.mItems, 0, items, position, chunk.mSize);
+                position += chunk.mSize;
+            }
+            return items;
+        }
+
+        private static final class Chunk {
+            @NonNull
+            private Object[] mItems;
+            private int mSize;
+            /**
+             * 是否与其它副本共享. 共享之后不会再被修改
+             */
+            private boolean mShared;
+
+            private Chunk(@NonNull Object[] items, int from, int count) {
+                mItems = Arrays.copyOfRange(items, from, from + count);
+                mSize = count;
+            }
+
+            private UnionTypeItemObject get(int index) {
+                return (UnionTypeItemObject) mItems[index];
+            }
+
+            private UnionTypeItemObject set(int index, UnionTypeItemObject element) {
+                final UnionTypeItemObject old = (UnionTypeItemObject) mItems[index];
+                mItems[index] = element;
+                return old;
+            }
+
+            /**
+             * 把 items 的前 count 个插入到 index 之前, index 为 -1 时追加到末尾
+             */
+            private void insert(int index, @NonNull Object[] items, int count) {
+                if (index < 0) {
+                    index = mSize;
+                }
+                if (mItems.length < mSize + count) {
+                    mItems = Arrays.copyOf(mItems, Math.min(MAX_CHUNK_SIZE, Math.max(mSize + count, mItems.length * 2)));
+                }
+                System.arraycopy(mItems, index, mItems, index + count, mSize - index);
+                System.arraycopy(items, 0, mItems, index, count);
+                mSize += count;
+            }
+
+            private void removeRange(int fromIndex, int toIndex) {
+                System.arraycopy(mItems, toIndex, mItems, fromIndex, mSize - toIndex);
+                final int newSize = mSize - (toIndex - fromIndex);
+                Arrays.fill(mItems, newSize, mSize, null);
+                mSize = newSize;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,269 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 基于 {@link StableId} 的 diff, O(N log N). 通过 unionType 与 stable id 匹配新旧数据,
+ * 在匹配的数据中保留最长递增子序列, 其余匹配的数据作为移动.
+ * <p>
+ * 输出的变化可以依次应用: 先从后往前删除, 再移动, 再从前往后插入, 最后是内容变化 (位置基于新的数据).
+ */
+final class KeyedDiff {
+
+    private KeyedDiff() {
+    }
+
+    /**
+     * @return 如果有数据没有实现 {@link StableId} 或者同一个 unionType 下 stable id 重复, 返回 false 并且不会输出任何变化.
+     */
+    static boolean calculateDiff(@NonNull List<UnionTypeItemObject> oldItems,
+                                 @NonNull List<UnionTypeItemObject> newItems,
+                                 boolean detectMoves,
+                                 @NonNull ListUpdateListener callback) {
+        final int oldSize = oldItems.size();
+        final int newSize = newItems.size();
+
+        final HashMap<Key, Integer> oldIndexMap = new HashMap<>(oldSize * 2);
+        for (int i = 0; i < oldSize; i++) {
+            final UnionTypeItemObject item = oldItems.get(i);
+            if (item == null || !(item.itemObject instanceof StableId)) {
+                return false;
+            }
+            if (oldIndexMap.put(new Key(item.unionType, ((StableId) item.itemObject).getStableId()), i) != null) {
+                return false;
+            }
+        }
+
+        final int[] oldToNew = new int[oldSize];
+        Arrays.fill(oldToNew, -1);
+        final int[] newToOld = new int[newSize];
+        for (int j = 0; j < newSize; j++) {
+            final UnionTypeItemObject item = newItems.get(j);
+            if (item == null || !(item.itemObject instanceof StableId)) {
+                return false;
+            }
+            newToOld[j] = -1;
+            final Integer oldIndex = oldIndexMap.get(new Key(item.unionType, ((StableId) item.itemObject).getStableId()));
+            if (oldIndex != null) {
+                if (oldToNew[oldIndex] >= 0) {
+                    return false;
+                }
+                oldToNew[oldIndex] = j;
+                newToOld[j] = oldIndex;
+            }
+        }
+
+        // 匹配的数据按旧的顺序排列, 找出新位置的最长递增子序列
+        final int[] matchedNewIndexes = new int[Math.min(oldSize, newSize)];
+        int matchedCount = 0;
+        for (int i = 0; i < oldSize; i++) {
+            if (oldToNew[i] >= 0) {
+                matchedNewIndexes[matchedCount++] = oldToNew[i];
+            }
+        }
+        final boolean[] inLis = longestIncreasingSubsequence(matchedNewIndexes, matchedCount);
+        if (!detectMoves) {
+            // 不检测移动时, 需要移动的数据作为删除与插入
+            int matchedIndex = 0;
+            for (int i = 0; i < oldSize; i++) {
+                if (oldToNew[i] >= 0) {
+                    if (!inLis[matchedIndex]) {
+                        newToOld[oldToNew[i]] = -1;
+                        oldToNew[i] = -1;
+                    }
+                    matchedIndex++;
+                }
+            }
+        }
+
+        // 删除, 从后往前
+        int removeEnd = -1;
+        for (int i = oldSize - 1; i >= -1; i--) {
+            final boolean removed = i >= 0 && oldToNew[i] < 0;
+            if (removed) {
+                if (removeEnd < 0) {
+                    removeEnd = i;
+                }
+            } else if (removeEnd >= 0) {
+                callback.onRemoved(i + 1, removeEnd - i);
+                removeEnd = -1;
+            }
+        }
+
+        if (detectMoves) {
+            dispatchMoves(matchedNewIndexes, matchedCount, inLis, newSize, callback);
+        }
+
+        // 插入, 从前往后
+        int insertStart = -1;
+        for (int j = 0; j <= newSize; j++) {
+            final boolean inserted = j < newSize && newToOld[j] < 0;
+            if (inserted) {
+                if (insertStart < 0) {
+                    insertStart = j;
+                }
+            } else if (insertStart >= 0) {
+                callback.onInserted(insertStart, j - insertStart);
+                insertStart = -1;
+            }
+        }
+
+        // 内容变化
+        for (int j = 0; j < newSize; j++) {
+            if (newToOld[j] >= 0) {
+                final UnionTypeItemObject oldItem = oldItems.get(newToOld[j]);
+                final UnionTypeItemObject newItem = newItems.get(j);
+                if (!oldItem.isSameContent(newItem)) {
+                    callback.onChanged(j, 1, oldItem.getChangePayload(newItem));
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * stable id 只在同一个 unionType 下唯一, 匹配时同时使用两者
+     */
+    private static final class Key {
+
+        private final int mUnionType;
+        private final long mStableId;
+
+        private Key(int unionType, long stableId) {
+            mUnionType = unionType;
+            mStableId = stableId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return mUnionType == key.mUnionType && mStableId == key.mStableId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mUnionType + Long.hashCode(mStableId);
+        }
+    }
+
+    /**
+     * 删除之后剩余的数据按旧的顺序排列, 按照新的顺序依次把不在最长递增子序列中的数据移动到前一个数据之后.
+     * <pre>
+     * 使用 cell 跟踪位置: cell 0 表示列表开头, cell p + 1 表示剩余数据中第 p 个数据原来的位置,
+     * 移动过来的数据追加在目标 cell 的末尾. 任意 cell 开始的位置是它之前所有 cell 的数据量之和 (Fenwick tree).
+     * </pre>
+     */
+    private static void dispatchMoves(@NonNull int[] matchedNewIndexes,
+                                      int matchedCount,
+                                      @NonNull boolean[] inLis,
+                                      int newSize,
+                                      @NonNull ListUpdateListener callback) {
+        // 剩余数据在新的数据中的相对顺序
+        final int[] rankByNewIndex = new int[newSize];
+        final boolean[] matchedNew = new boolean[newSize];
+        for (int p = 0; p < matchedCount; p++) {
+            matchedNew[matchedNewIndexes[p]] = true;
+        }
+        int rank = 0;
+        for (int j = 0; j < newSize; j++) {
+            if (matchedNew[j]) {
+                rankByNewIndex[j] = rank++;
+            }
+        }
+        final int[] slotByRank = new int[matchedCount];
+        for (int p = 0; p < matchedCount; p++) {
+            slotByRank[rankByNewIndex[matchedNewIndexes[p]]] = p;
+        }
+
+        final int cellCount = matchedCount + 1;
+        final int[] cellSizeTree = new int[cellCount + 1];
+        for (int cell = 1; cell < cellCount; cell++) {
+            addCellSize(cellSizeTree, cell, 1);
+        }
+        final int[] cellByRank = new int[matchedCount];
+        for (int r = 0; r < matchedCount; r++) {
+            final int slot = slotByRank[r];
+            final int fromCell = slot + 1;
+            if (inLis[slot]) {
+                cellByRank[r] = fromCell;
+                continue;
+            }
+
+            final int toCell = r == 0 ? 0 : cellByRank[r - 1];
+            final int fromPosition = getCellStart(cellSizeTree, fromCell);
+            addCellSize(cellSizeTree, fromCell, -1);
+            final int toPosition = getCellStart(cellSizeTree, toCell + 1);
+            addCellSize(cellSizeTree, toCell, 1);
+            cellByRank[r] = toCell;
+            if (fromPosition != toPosition) {
+                callback.onMoved(fromPosition, toPosition);
+            }
+        }
+    }
+
+    private static void addCellSize(@NonNull int[] cellSizeTree, int cell, int delta) {
+        for (int i = cell + 1; i < cellSizeTree.length; i += i & -i) {
+            cellSizeTree[i] += delta;
+        }
+    }
+
+    /**
+     * @return cell 之前所有 cell 的数据量之和
+     */
+    private static int getCellStart(@NonNull int[] cellSizeTree, int cell) {
+        int sum = 0;
+        for (int i = cell; i > 0; i -= i & -i) {
+            sum += cellSizeTree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return values 的前 size 个数据中, 属于某一个最长严格递增子序列的位置被标记为 true
+     */
+    @NonNull
+    private static boolean[] longestIncreasingSubsequence(@NonNull int[] values, int size) {
+        final boolean[] inLis = new boolean[size];
+        if (size == 0) {
+            return inLis;
+        }
+
+        // tails[l] 为长度为 l + 1 的递增子序列的最小结尾所在的位置
+        final int[] tails = new int[size];
+        final int[] previous = new int[size];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        for (int i = tails[length - 1]; i >= 0; i = previous[i]) {
+            inLis[i] = true;
+        }
+        return inLis;
+    }
+
+}
@@ -0,0 +1,20 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.Nullable;
+
+/**
+ * 列表变化的接收者, 与 RecyclerView 的 ListUpdateCallback 相同, 使 diff 的计算不依赖 Android.
+ *
+ * @see KeyedDiff
+ */
+public interface ListUpdateListener {
+
+    void onInserted(int position, int count);
+
+    void onRemoved(int position, int count);
+
+    void onMoved(int fromPosition, int toPosition);
+
+    void onChanged(int position, int count, @Nullable Object payload);
+
+}
@@ -0,0 +1,10 @@
+package io.github.idonans.uniontype;
+
+/**
+ * @see GroupArrayList#removeItems(int, Predicate)
+ */
+public interface Predicate<T> {
+
+    boolean test(T t);
+
+}
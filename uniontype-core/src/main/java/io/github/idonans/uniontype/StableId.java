@@ -0,0 +1,13 @@
+package io.github.idonans.uniontype;
+
+/**
+ * 数据的稳定标识. 在同一个 unionType 下, 表示同一条数据的对象总是返回相同的 id, 不同的数据返回不同的 id.
+ *
+ * @see DeepDiff
+ * @see KeyedDiff
+ */
+public interface StableId {
+
+    long getStableId();
+
+}
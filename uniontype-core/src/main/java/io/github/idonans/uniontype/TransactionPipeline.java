@@ -0,0 +1,1442 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 按分组保存数据, 修改通过 {@link Transaction} 提交: 在后台按批应用修改并计算变化,
+ * 在主线程上按提交顺序切换数据 ({@link #getReadOnly()}) 并把变化分发给 {@link ListUpdateListener}.
+ * <p>
+ * 不依赖 Android: 后台计算在 workerExecutor 上执行, 通过 {@link MainThreadDispatcher} 回到主线程.
+ * 内置的 action 直接记录精确的变化区域, 其它情况下通过 {@link KeyedDiff} 或者 {@link ListDiffer} 计算 diff.
+ * Android 上使用基于 RecyclerView 的 AsyncGroupArrayList.
+ */
+public class TransactionPipeline {
+
+    /**
+     * 把任务交给主线程执行
+     */
+    public interface MainThreadDispatcher {
+
+        void post(@NonNull Runnable runnable);
+
+        void postDelayed(@NonNull Runnable runnable, long delayMillis);
+    }
+
+    /**
+     * 无法通过 {@link KeyedDiff} 计算时使用的 diff 算法
+     */
+    public interface ListDiffer {
+
+        /**
+         * 不识别相同的数据, 按位置记录为替换. 没有更合适的算法时使用.
+         */
+        ListDiffer REPLACE = (oldItems, newItems, detectMoves, listUpdateListener) ->
+                recordReplaced(listUpdateListener, 0, oldItems.size(), newItems.size());
+
+        /**
+         * 在后台线程上调用, 多个分组并行计算时 (见 {@link #setDiffExecutor(Executor)}) 可能同时在多个线程上调用.
+         * 按顺序分发 oldItems 到 newItems 的变化, 每一条变化中的位置都基于前一条生效之后的列表.
+         */
+        void calculateDiff(@NonNull List<UnionTypeItemObject> oldItems,
+                           @NonNull List<UnionTypeItemObject> newItems,
+                           boolean detectMoves,
+                           @NonNull ListUpdateListener listUpdateListener);
+    }
+
+    @NonNull
+    private final ListUpdateListener mListUpdateListener;
+    @NonNull
+    private final Executor mWorkerExecutor;
+    @NonNull
+    private final MainThreadDispatcher mMainThreadDispatcher;
+    @NonNull
+    private final ListDiffer mListDiffer;
+
+    /**
+     * 已经分发给 UI 的数据, 只在 UI 线程上访问
+     */
+    @NonNull
+    private GroupArrayList mGroupArrayListOrigin;
+    @NonNull
+    private ReadOnly mReadOnly;
+    /**
+     * 最近一次计算得到的数据 (可能还没有分发给 UI), 只在 {@link TransactionAction} 中访问.
+     * 下一批 transaction 基于它继续计算, 而不需要等待 UI 线程分发完上一批.
+     */
+    @NonNull
+    private GroupArrayList mGroupArrayListPending;
+
+    @NonNull
+    private final Object mTransactionListLock = new Object();
+    @NonNull
+    private List<Transaction> mTransactionList = new ArrayList<>();
+    /**
+     * workerExecutor 上是否已经有执行中或者等待执行的 {@link TransactionAction}, 受 mTransactionListLock 保护.
+     * 同时最多只有一个, 因此 workerExecutor 不需要是单线程的.
+     */
+    private boolean mTransactionActionScheduled;
+    private final Runnable mTransactionAction = new TransactionAction();
+
+    @NonNull
+    private volatile CommitPolicy mCommitPolicy = CommitPolicy.DEFAULT;
+    @Nullable
+    private volatile Executor mDiffExecutor;
+    private volatile int mDiffEngine = DIFF_ENGINE_DEFAULT;
+
+    /**
+     * 使用构造时传入的 {@link ListDiffer} 计算 diff
+     */
+    public static final int DIFF_ENGINE_DEFAULT = 0;
+    /**
+     * 使用 {@link StableId} 匹配新旧数据, O(N log N), 检测移动也不会有额外的开销.
+     * 参与 diff 的数据中有没有实现 {@link StableId} 的或者 stable id 重复时, 该部分数据仍然使用 {@link ListDiffer}.
+     */
+    public static final int DIFF_ENGINE_KEYED = 1;
+
+    /**
+     * 分组的新旧数据量之和不小于该值时才交给 diffExecutor 并行计算, 较小的分组在当前线程计算
+     */
+    private static final int PARALLEL_DIFF_MIN_ITEM_COUNT = 256;
+    /**
+     * 是否已经有一个等待中的合并窗口, 受 mTransactionListLock 保护
+     */
+    private boolean mCommitWindowScheduled;
+    /**
+     * 合并窗口打开期间, 窗口内的第一个 transaction 在 mTransactionList 中的位置. 在此之前的 transaction 可以处理,
+     * 窗口内的留给窗口结束时统一处理. 受 mTransactionListLock 保护
+     */
+    private int mCommitWindowStart;
+    /**
+     * 受 mTransactionListLock 保护
+     */
+    @NonNull
+    private final CommitStats mCommitStats = new CommitStats();
+
+    /**
+     * 已经计算完成等待分发的结果, 按提交顺序排列. 只在 UI 线程上访问
+     */
+    @NonNull
+    private final ArrayDeque<Runnable> mPendingDispatchQueue = new ArrayDeque<>();
+
+    /**
+     * @param listUpdateListener   在主线程上接收数据的变化
+     * @param workerExecutor       应用 transaction 并计算 diff, 同时最多只有一个任务在执行
+     * @param mainThreadDispatcher 回到主线程分发结果, 以及实现 {@link CommitPolicy} 的合并窗口
+     * @param listDiffer           无法通过 {@link KeyedDiff} 计算时使用的 diff 算法
+     */
+    public TransactionPipeline(@NonNull ListUpdateListener listUpdateListener,
+                               @NonNull Executor workerExecutor,
+                               @NonNull MainThreadDispatcher mainThreadDispatcher,
+                               @NonNull ListDiffer listDiffer) {
+        mListUpdateListener = listUpdateListener;
+        mWorkerExecutor = workerExecutor;
+        mMainThreadDispatcher = mainThreadDispatcher;
+        mListDiffer = listDiffer;
+        mGroupArrayListOrigin = new GroupArrayList();
+        mReadOnly = new ReadOnly(mGroupArrayListOrigin);
+        mGroupArrayListPending = mGroupArrayListOrigin;
+    }
+
+    @NonNull
+    public ReadOnly getReadOnly() {
+        return mReadOnly;
+    }
+
+    @NonNull
+    public Transaction beginTransaction() {
+        return new Transaction(this);
+    }
+
+    /**
+     * 设置之后, 一次提交中有多个分组发生变化时, 各分组的 diff 在 diffExecutor 上并行计算,
+     * 结果按位置顺序合并之后再分发. 适用于数据量很大并且分布在多个分组中的列表. 设置为 null 时取消 (默认).
+     * <p>
+     * 单个分组内的 diff 无法拆分; 需要检测移动 ({@link Transaction#setDetectMoves(boolean)}) 并且多个分组发生变化时,
+     * 仍然在整个列表上计算 diff. 并行计算时 {@link DeepDiff} 的方法可能在多个线程上同时调用.
+     */
+    public void setDiffExecutor(@Nullable Executor diffExecutor) {
+        mDiffExecutor = diffExecutor;
+    }
+
+    /**
+     * 设置计算 diff 的方式, 默认 {@link #DIFF_ENGINE_DEFAULT}
+     *
+     * @see #DIFF_ENGINE_DEFAULT
+     * @see #DIFF_ENGINE_KEYED
+     */
+    public void setDiffEngine(int diffEngine) {
+        if (diffEngine != DIFF_ENGINE_DEFAULT && diffEngine != DIFF_ENGINE_KEYED) {
+            throw new IllegalArgumentException("unknown diff engine " + diffEngine);
+        }
+        mDiffEngine = diffEngine;
+    }
+
+    /**
+     * 设置 transaction 的合并与积压策略, 对之后的提交生效
+     */
+    public void setCommitPolicy(@NonNull CommitPolicy commitPolicy) {
+        mCommitPolicy = commitPolicy;
+    }
+
+    @NonNull
+    public CommitPolicy getCommitPolicy() {
+        return mCommitPolicy;
+    }
+
+    /**
+     * @return 当前的提交统计数据的副本
+     */
+    @NonNull
+    public CommitStats getCommitStats() {
+        synchronized (mTransactionListLock) {
+            return new CommitStats(mCommitStats);
+        }
+    }
+
+    private void commit(@NonNull Transaction transaction) {
+        final CommitPolicy commitPolicy = mCommitPolicy;
+        synchronized (mTransactionListLock) {
+            mTransactionList.add(transaction);
+            mCommitStats.mCommittedCount++;
+
+            if (commitPolicy.mOverflowStrategy == CommitPolicy.OVERFLOW_DROP_OLDEST) {
+                dropSupersededTransactions(commitPolicy.mMaxPendingSize);
+            }
+
+            if (commitPolicy.mWindowMs > 0) {
+                // 合并窗口内的所有提交, 窗口结束时统一处理
+                if (!mCommitWindowScheduled) {
+                    mCommitWindowScheduled = true;
+                    mCommitWindowStart = mTransactionList.size() - 1;
+                    mMainThreadDispatcher.postDelayed(() -> {
+                        synchronized (mTransactionListLock) {
+                            mCommitWindowScheduled = false;
+                        }
+                        enqueueTransactionAction();
+                    }, commitPolicy.mWindowMs);
+                }
+                return;
+            }
+        }
+
+        enqueueTransactionAction();
+    }
+
+    /**
+     * 等待处理的 transaction 超出 maxPendingSize 时, 从最早的开始丢弃可以被安全跳过的 transaction,
+     * 见 {@link #isSuperseded(int)}. 被丢弃的 transaction 保留在队列中, 只是不再执行其 action,
+     * 其回调仍然按顺序与所在的批次一起执行. 受 mTransactionListLock 保护.
+     */
+    private void dropSupersededTransactions(int maxPendingSize) {
+        int pendingCount = 0;
+        for (Transaction transaction : mTransactionList) {
+            if (!transaction.mDropped) {
+                pendingCount++;
+            }
+        }
+
+        final int size = mTransactionList.size();
+        for (int i = 0; i < size && pendingCount > maxPendingSize; i++) {
+            if (isSuperseded(i)) {
+                final Transaction transaction = mTransactionList.get(i);
+                transaction.mDropped = true;
+                transaction.mActionList.clear();
+                pendingCount--;
+                mCommitStats.mDroppedCount++;
+            }
+        }
+    }
+
+    /**
+     * 第 index 个 transaction 只包含对分组的整体替换 ({@link Transaction#setGroupItems(int, Collection)}),
+     * 并且之后的 transaction 会再次整体替换这些分组, 期间也没有自定义的 action (可能读取任意分组) 时,
+     * 跳过它不会影响最终的数据. 受 mTransactionListLock 保护.
+     */
+    private boolean isSuperseded(int index) {
+        final Transaction transaction = mTransactionList.get(index);
+        if (transaction.mDropped || transaction.mActionList.isEmpty()) {
+            return false;
+        }
+
+        final List<Transaction.Action> actionList = transaction.mActionList;
+        final int[] pendingGroups = new int[actionList.size()];
+        int pendingGroupCount = 0;
+        for (Transaction.Action action : actionList) {
+            if (!(action instanceof Transaction.SetGroupItemsAction)) {
+                return false;
+            }
+            pendingGroups[pendingGroupCount++] = ((Transaction.SetGroupItemsAction) action).mGroup;
+        }
+
+        final int size = mTransactionList.size();
+        for (int i = index + 1; i < size && pendingGroupCount > 0; i++) {
+            for (Transaction.Action action : mTransactionList.get(i).mActionList) {
+                if (!(action instanceof Transaction.RangeAction)) {
+                    return false;
+                }
+                if (action instanceof Transaction.SetGroupItemsAction) {
+                    final int group = ((Transaction.SetGroupItemsAction) action).mGroup;
+                    for (int j = 0; j < pendingGroupCount; j++) {
+                        if (pendingGroups[j] == group) {
+                            pendingGroups[j] = pendingGroups[--pendingGroupCount];
+                            j--;
+                        }
+                    }
+                }
+            }
+        }
+        return pendingGroupCount == 0;
+    }
+
+    private void enqueueTransactionAction() {
+        synchronized (mTransactionListLock) {
+            if (mTransactionActionScheduled) {
+                // 执行中的 TransactionAction 会继续处理之后提交的 transaction
+                return;
+            }
+            mTransactionActionScheduled = true;
+        }
+        mWorkerExecutor.execute(mTransactionAction);
+    }
+
+    /**
+     * 依次处理所有等待中的 transaction, 没有可以处理的 transaction 时结束. 每一批最多 {@link CommitPolicy#getMaxBatchSize()} 个,
+     * 积压超出 {@link CommitPolicy#getMaxPendingSize()} 并且策略为 {@link CommitPolicy#OVERFLOW_MERGE} 时一次处理全部.
+     * 合并窗口打开期间提交的 transaction 留给窗口结束时处理.
+     */
+    private class TransactionAction implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final List<Transaction> transactionList;
+                    synchronized (mTransactionListLock) {
+                        final int pendingSize = mTransactionList.size();
+                        final int availableSize = mCommitWindowScheduled ? mCommitWindowStart : pendingSize;
+                        if (availableSize <= 0) {
+                            mTransactionActionScheduled = false;
+                            return;
+                        }
+                        final CommitPolicy commitPolicy = mCommitPolicy;
+                        int batchSize = availableSize;
+                        if (batchSize > commitPolicy.mMaxBatchSize
+                                && !(commitPolicy.mOverflowStrategy == CommitPolicy.OVERFLOW_MERGE
+                                && pendingSize > commitPolicy.mMaxPendingSize)) {
+                            // 超出单批上限的部分在下一批中处理
+                            batchSize = commitPolicy.mMaxBatchSize;
+                        }
+                        if (batchSize == pendingSize) {
+                            transactionList = mTransactionList;
+                            mTransactionList = new ArrayList<>();
+                        } else {
+                            final List<Transaction> batch = mTransactionList.subList(0, batchSize);
+                            transactionList = new ArrayList<>(batch);
+                            batch.clear();
+                        }
+                        if (mCommitWindowScheduled) {
+                            mCommitWindowStart -= batchSize;
+                        }
+                        mCommitStats.onBatch(transactionList.size());
+                    }
+                    applyTransactionList(transactionList);
+                }
+            } catch (Throwable e) {
+                // 之后的提交重新调度
+                synchronized (mTransactionListLock) {
+                    mTransactionActionScheduled = false;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void applyTransactionList(@NonNull final List<Transaction> transactionList) {
+        boolean detectMoves = false;
+        boolean forbiddenMoves = false;
+        final GroupArrayList oldList = mGroupArrayListPending;
+        // 与 oldList 共享所有分组, 只有被 action 修改的分组才会被复制
+        final GroupArrayList newList = new GroupArrayList(oldList);
+        // 所有 action 都能记录精确的变化区域时, 无需计算 diff
+        final UpdateRecorder updateRecorder = isRangeActionOnly(transactionList) ? new UpdateRecorder() : null;
+        for (Transaction transaction : transactionList) {
+            for (Transaction.Action action : transaction.mActionList) {
+                if (updateRecorder != null) {
+                    ((Transaction.RangeAction) action).onAction(newList, updateRecorder);
+                } else {
+                    action.onAction(transaction, newList);
+                }
+            }
+            detectMoves |= transaction.mDetectMoves;
+            forbiddenMoves |= transaction.mForbiddenMoves;
+        }
+        final ReadOnly readOnly = new ReadOnly(newList);
+
+        final List<? extends ListUpdates> diffResultList;
+        if (updateRecorder != null) {
+            diffResultList = Collections.singletonList(updateRecorder);
+        } else {
+            // cal diff
+            diffResultList = calculateDiff(oldList, newList, detectMoves && !forbiddenMoves,
+                    mDiffExecutor, mDiffEngine == DIFF_ENGINE_KEYED, mListDiffer);
+        }
+
+        // 不等待 UI 线程分发, 下一批 transaction 直接基于 newList 计算.
+        // UI 线程按提交顺序依次分发, 分发时 oldList 总是等于 UI 当前的数据.
+        mGroupArrayListPending = newList;
+        mMainThreadDispatcher.post(() -> {
+            mPendingDispatchQueue.add(() -> dispatch(transactionList, newList, readOnly, diffResultList));
+            scheduleDispatch();
+        });
+    }
+
+    /**
+     * 有计算完成等待分发的结果时在主线程上调用. 默认立即按提交顺序分发,
+     * 子类可以推迟到合适的时机再调用 {@link #drainPendingDispatch()}.
+     */
+    @UiThread
+    protected void scheduleDispatch() {
+        drainPendingDispatch();
+    }
+
+    /**
+     * @return 是否有计算完成等待分发的结果
+     */
+    @UiThread
+    protected final boolean hasPendingDispatch() {
+        return !mPendingDispatchQueue.isEmpty();
+    }
+
+    /**
+     * 按提交顺序分发所有计算完成的结果
+     */
+    @UiThread
+    protected final void drainPendingDispatch() {
+        Runnable pendingDispatch;
+        while ((pendingDispatch = mPendingDispatchQueue.poll()) != null) {
+            pendingDispatch.run();
+        }
+    }
+
+    @UiThread
+    private void dispatch(@NonNull List<Transaction> transactionList,
+                          @NonNull GroupArrayList newList,
+                          @NonNull ReadOnly readOnly,
+                          @NonNull List<? extends ListUpdates> diffResultList) {
+        for (Transaction transaction : transactionList) {
+            if (transaction.mBatchCommitStartCallback != null) {
+                transaction.mBatchCommitStartCallback.run();
+            }
+        }
+
+        // 每一批都基于前一批的结果计算, 并且在 UI 线程上按提交顺序分发, 因此 oldList 总是等于 UI 当前的数据 (mGroupArrayListOrigin)
+        mGroupArrayListOrigin = newList;
+        mReadOnly = readOnly;
+
+        for (ListUpdates listUpdates : diffResultList) {
+            listUpdates.dispatchUpdatesTo(mListUpdateListener);
+        }
+        for (Transaction transaction : transactionList) {
+            if (transaction.mBatchCommitEndCallback != null) {
+                transaction.mBatchCommitEndCallback.run();
+            }
+        }
+    }
+
+    private static boolean isRangeActionOnly(@NonNull List<Transaction> transactionList) {
+        for (Transaction transaction : transactionList) {
+            for (Transaction.Action action : transaction.mActionList) {
+                if (!(action instanceof Transaction.RangeAction)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 只在内容发生变化的分组上计算 diff. 由于分组之间互不重叠, 从最后一个分组开始依次分发各分组的变化,
+     * 每个分组在分发时的开始位置都等于它在 oldList 中的开始位置.
+     * 需要检测移动并且有多个分组发生变化时, 为了保留跨分组的移动, 在整个列表上计算 diff.
+     * diffExecutor 不为 null 时, 多个分组的 diff 并行计算.
+     *
+     * @return 按分发顺序排列的 diff 结果
+     */
+    @NonNull
+    private static List<GroupDiffResult> calculateDiff(@NonNull final GroupArrayList oldList,
+                                                       @NonNull final GroupArrayList newList,
+                                                       final boolean detectMoves,
+                                                       @Nullable Executor diffExecutor,
+                                                       final boolean keyedDiff,
+                                                       @NonNull final ListDiffer listDiffer) {
+        final int[] changedGroups = GroupArrayList.getChangedGroups(oldList, newList);
+        final List<GroupDiffResult> diffResultList = new ArrayList<>(changedGroups.length);
+        if (changedGroups.length == 0) {
+            return diffResultList;
+        }
+
+        if (detectMoves && changedGroups.length > 1) {
+            diffResultList.add(new GroupDiffResult(0, calculateListDiff(oldList.toList(), newList.toList(), true, keyedDiff, listDiffer)));
+            return diffResultList;
+        }
+
+        if (diffExecutor == null || changedGroups.length < 2) {
+            for (int i = changedGroups.length - 1; i >= 0; i--) {
+                final int group = changedGroups[i];
+                final ListUpdates listUpdates = calculateListDiff(
+                        oldList.peekGroupItems(group), newList.peekGroupItems(group), detectMoves, keyedDiff, listDiffer);
+                diffResultList.add(new GroupDiffResult(oldList.getGroupPositionStart(group), listUpdates));
+            }
+            return diffResultList;
+        }
+
+        // 各分组的 diff 互不依赖, 较大的分组交给 diffExecutor 并行计算.
+        // 当前线程按顺序执行所有尚未开始的任务, 即使 diffExecutor 繁忙也不会一直等待.
+        final List<FutureTask<ListUpdates>> diffTaskList = new ArrayList<>(changedGroups.length);
+        for (int i = changedGroups.length - 1; i >= 0; i--) {
+            final int group = changedGroups[i];
+            final List<UnionTypeItemObject> oldGroupItems = oldList.peekGroupItems(group);
+            final List<UnionTypeItemObject> newGroupItems = newList.peekGroupItems(group);
+            final FutureTask<ListUpdates> diffTask = new FutureTask<>(
+                    () -> calculateListDiff(oldGroupItems, newGroupItems, detectMoves, keyedDiff, listDiffer));
+            diffTaskList.add(diffTask);
+            final int itemCount = (oldGroupItems == null ? 0 : oldGroupItems.size())
+                    + (newGroupItems == null ? 0 : newGroupItems.size());
+            if (itemCount >= PARALLEL_DIFF_MIN_ITEM_COUNT) {
+                diffExecutor.execute(diffTask);
+            }
+        }
+        for (int i = 0; i < diffTaskList.size(); i++) {
+            final FutureTask<ListUpdates> diffTask = diffTaskList.get(i);
+            // 如果任务已经开始或者已经完成, run 会直接返回
+            diffTask.run();
+            final ListUpdates listUpdates;
+            try {
+                listUpdates = diffTask.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            final int group = changedGroups[changedGroups.length - 1 - i];
+            diffResultList.add(new GroupDiffResult(oldList.getGroupPositionStart(group), listUpdates));
+        }
+        return diffResultList;
+    }
+
+    /**
+     * @param keyedDiff 为 true 时优先使用 {@link KeyedDiff}, 有数据没有实现 {@link StableId} 时使用 listDiffer.
+     */
+    @NonNull
+    private static ListUpdates calculateListDiff(@Nullable List<UnionTypeItemObject> oldItems,
+                                                 @Nullable List<UnionTypeItemObject> newItems,
+                                                 boolean detectMoves,
+                                                 boolean keyedDiff,
+                                                 @NonNull ListDiffer listDiffer) {
+        final List<UnionTypeItemObject> oldItemsNonNull = oldItems == null ? Collections.emptyList() : oldItems;
+        final List<UnionTypeItemObject> newItemsNonNull = newItems == null ? Collections.emptyList() : newItems;
+        if (keyedDiff) {
+            final UpdateRecorder updateRecorder = new UpdateRecorder();
+            if (KeyedDiff.calculateDiff(oldItemsNonNull, newItemsNonNull, detectMoves, updateRecorder)) {
+                return updateRecorder;
+            }
+        }
+
+        final UpdateRecorder updateRecorder = new UpdateRecorder();
+        listDiffer.calculateDiff(oldItemsNonNull, newItemsNonNull, detectMoves, updateRecorder);
+        return updateRecorder;
+    }
+
+    /**
+     * 记录从 position 开始 oldSize 个数据被替换为 newSize 个数据
+     */
+    private static void recordReplaced(@NonNull ListUpdateListener listUpdateListener, int position, int oldSize, int newSize) {
+        listUpdateListener.onChanged(position, Math.min(oldSize, newSize), null);
+        if (newSize > oldSize) {
+            listUpdateListener.onInserted(position + oldSize, newSize - oldSize);
+        } else {
+            listUpdateListener.onRemoved(position + newSize, oldSize - newSize);
+        }
+    }
+
+    /**
+     * 在 UI 线程上分发给 {@link ListUpdateListener} 的一组变化
+     */
+    private interface ListUpdates {
+        void dispatchUpdatesTo(@NonNull ListUpdateListener listUpdateListener);
+    }
+
+    /**
+     * 一段连续区域上的 diff 结果, 分发时所有位置加上 offset
+     */
+    private static class GroupDiffResult implements ListUpdates {
+
+        private final int mOffset;
+        @NonNull
+        private final ListUpdates mListUpdates;
+
+        private GroupDiffResult(int offset, @NonNull ListUpdates listUpdates) {
+            mOffset = offset;
+            mListUpdates = listUpdates;
+        }
+
+        @Override
+        public void dispatchUpdatesTo(@NonNull ListUpdateListener listUpdateListener) {
+            if (mOffset == 0) {
+                mListUpdates.dispatchUpdatesTo(listUpdateListener);
+            } else {
+                mListUpdates.dispatchUpdatesTo(new OffsetListUpdateListener(mOffset, listUpdateListener));
+            }
+        }
+    }
+
+    /**
+     * 按顺序记录 {@link Transaction.RangeAction}, {@link KeyedDiff} 或者 {@link ListDiffer} 产生的变化,
+     * 每一条记录中的位置都基于前一条记录生效之后的列表
+     */
+    private static class UpdateRecorder implements ListUpdates, ListUpdateListener {
+
+        private static final int TYPE_INSERTED = 0;
+        private static final int TYPE_REMOVED = 1;
+        private static final int TYPE_CHANGED = 2;
+        private static final int TYPE_MOVED = 3;
+
+        /**
+         * 每条记录依次占用 4 个位置: type, position (或 fromPosition), count (或 toPosition), payload 在 mPayloads 中的位置 (没有时为 -1)
+         */
+        @NonNull
+        private int[] mRecords = new int[4 * 4];
+        private int mRecordsSize;
+        @Nullable
+        private List<Object> mPayloads;
+
+        @Override
+        public void onInserted(int position, int count) {
+            if (count > 0) {
+                record(TYPE_INSERTED, position, count, -1);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            if (count > 0) {
+                record(TYPE_REMOVED, position, count, -1);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            record(TYPE_MOVED, fromPosition, toPosition, -1);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            if (count <= 0) {
+                return;
+            }
+            int payloadIndex = -1;
+            if (payload != null) {
+                if (mPayloads == null) {
+                    mPayloads = new ArrayList<>();
+                }
+                payloadIndex = mPayloads.size();
+                mPayloads.add(payload);
+            }
+            record(TYPE_CHANGED, position, count, payloadIndex);
+        }
+
+        private void record(int type, int first, int second, int payloadIndex) {
+            if (mRecordsSize + 4 > mRecords.length) {
+                mRecords = Arrays.copyOf(mRecords, mRecords.length * 2);
+            }
+            mRecords[mRecordsSize++] = type;
+            mRecords[mRecordsSize++] = first;
+            mRecords[mRecordsSize++] = second;
+            mRecords[mRecordsSize++] = payloadIndex;
+        }
+
+        @Override
+        public void dispatchUpdatesTo(@NonNull ListUpdateListener listUpdateListener) {
+            // 合并相邻的同类变化
+            final BatchingListUpdateListener batchingCallback = new BatchingListUpdateListener(listUpdateListener);
+            for (int i = 0; i < mRecordsSize; i += 4) {
+                final int first = mRecords[i + 1];
+                final int second = mRecords[i + 2];
+                switch (mRecords[i]) {
+                    case TYPE_INSERTED:
+                        batchingCallback.onInserted(first, second);
+                        break;
+                    case TYPE_REMOVED:
+                        batchingCallback.onRemoved(first, second);
+                        break;
+                    case TYPE_CHANGED:
+                        final int payloadIndex = mRecords[i + 3];
+                        batchingCallback.onChanged(first, second, payloadIndex < 0 ? null : mPayloads.get(payloadIndex));
+                        break;
+                    case TYPE_MOVED:
+                        batchingCallback.onMoved(first, second);
+                        break;
+                }
+            }
+            batchingCallback.dispatchLastEvent();
+        }
+    }
+
+    private static class OffsetListUpdateListener implements ListUpdateListener {
+
+        private final int mOffset;
+        @NonNull
+        private final ListUpdateListener mListUpdateListener;
+
+        private OffsetListUpdateListener(int offset, @NonNull ListUpdateListener listUpdateListener) {
+            mOffset = offset;
+            mListUpdateListener = listUpdateListener;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mListUpdateListener.onInserted(position + mOffset, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mListUpdateListener.onRemoved(position + mOffset, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mListUpdateListener.onMoved(fromPosition + mOffset, toPosition + mOffset);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            mListUpdateListener.onChanged(position + mOffset, count, payload);
+        }
+    }
+
+    /**
+     * 合并相邻的同类变化之后再分发, 与 RecyclerView 的 BatchingListUpdateCallback 相同.
+     * 最后需要调用 {@link #dispatchLastEvent()}.
+     */
+    private static class BatchingListUpdateListener implements ListUpdateListener {
+
+        private static final int TYPE_NONE = 0;
+        private static final int TYPE_ADD = 1;
+        private static final int TYPE_REMOVE = 2;
+        private static final int TYPE_CHANGE = 3;
+
+        @NonNull
+        private final ListUpdateListener mWrapped;
+
+        private int mLastEventType = TYPE_NONE;
+        private int mLastEventPosition = -1;
+        private int mLastEventCount = -1;
+        @Nullable
+        private Object mLastEventPayload;
+
+        private BatchingListUpdateListener(@NonNull ListUpdateListener wrapped) {
+            mWrapped = wrapped;
+        }
+
+        private void dispatchLastEvent() {
+            switch (mLastEventType) {
+                case TYPE_ADD:
+                    mWrapped.onInserted(mLastEventPosition, mLastEventCount);
+                    break;
+                case TYPE_REMOVE:
+                    mWrapped.onRemoved(mLastEventPosition, mLastEventCount);
+                    break;
+                case TYPE_CHANGE:
+                    mWrapped.onChanged(mLastEventPosition, mLastEventCount, mLastEventPayload);
+                    break;
+            }
+            mLastEventPayload = null;
+            mLastEventType = TYPE_NONE;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            if (mLastEventType == TYPE_ADD && position >= mLastEventPosition
+                    && position <= mLastEventPosition + mLastEventCount) {
+                mLastEventCount += count;
+                mLastEventPosition = Math.min(position, mLastEventPosition);
+                return;
+            }
+            dispatchLastEvent();
+            mLastEventPosition = position;
+            mLastEventCount = count;
+            mLastEventType = TYPE_ADD;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            if (mLastEventType == TYPE_REMOVE && mLastEventPosition >= position
+                    && mLastEventPosition <= position + count) {
+                mLastEventCount += count;
+                mLastEventPosition = position;
+                return;
+            }
+            dispatchLastEvent();
+            mLastEventPosition = position;
+            mLastEventCount = count;
+            mLastEventType = TYPE_REMOVE;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            dispatchLastEvent();
+            mWrapped.onMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            if (mLastEventType == TYPE_CHANGE
+                    && !(position > mLastEventPosition + mLastEventCount
+                    || position + count < mLastEventPosition
+                    || mLastEventPayload != payload)) {
+                // 与上一次的变化区域重叠或者相邻, 并且 payload 相同
+                final int previousEnd = mLastEventPosition + mLastEventCount;
+                mLastEventPosition = Math.min(position, mLastEventPosition);
+                mLastEventCount = Math.max(previousEnd, position + count) - mLastEventPosition;
+                return;
+            }
+            dispatchLastEvent();
+            mLastEventPosition = position;
+            mLastEventCount = count;
+            mLastEventPayload = payload;
+            mLastEventType = TYPE_CHANGE;
+        }
+    }
+
+    public static class Transaction {
+
+        @NonNull
+        private final TransactionPipeline mTransactionPipeline;
+        @NonNull
+        private final List<Action> mActionList = new ArrayList<>();
+        @Nullable
+        private Runnable mBatchCommitStartCallback;
+        @Nullable
+        private Runnable mBatchCommitEndCallback;
+
+        private boolean mCommit;
+        /**
+         * 是否因积压超出上限而被丢弃, 受 mTransactionListLock 保护, 回调执行时已经确定
+         */
+        private boolean mDropped;
+        private boolean mDetectMoves;
+        private boolean mForbiddenMoves;
+
+        private Transaction(@NonNull TransactionPipeline transactionPipeline) {
+            mTransactionPipeline = transactionPipeline;
+        }
+
+        @NonNull
+        public Transaction setDetectMoves(boolean detectMoves) {
+            mDetectMoves = detectMoves;
+            return this;
+        }
+
+        @NonNull
+        public Transaction setForbiddenMoves(boolean forbiddenMoves) {
+            mForbiddenMoves = forbiddenMoves;
+            return this;
+        }
+
+        @NonNull
+        public Transaction add(@NonNull Action action) {
+            checkNotCommitted();
+            mActionList.add(action);
+            return this;
+        }
+
+        /**
+         * 向指定组中添加数据. 如果一次提交中的所有操作都是由 {@link #appendGroupItems(int, Collection)},
+         * {@link #insertGroupItems(int, int, Collection)}, {@link #removeGroupItems(int, int, int)},
+         * {@link #setGroupItems(int, Collection)}, {@link #setGroupItems(int, Collection, UpdateScript)},
+         * {@link #replaceGroupItems(int, int, List)} 添加的, 会直接分发精确的变化区域而不再计算 diff.
+         *
+         * @param group 分组
+         * @param items 待添加的数据
+         * @see GroupArrayList#appendGroupItems(int, Collection)
+         */
+        @NonNull
+        public Transaction appendGroupItems(int group, @Nullable Collection<UnionTypeItemObject> items) {
+            final List<UnionTypeItemObject> itemsCopy = copyOf(items);
+            return add(new RangeAction() {
+                @Override
+                void onAction(@NonNull GroupArrayList groupArrayList, @Nullable UpdateRecorder recorder) {
+                    if (itemsCopy == null || itemsCopy.isEmpty()) {
+                        return;
+                    }
+                    final int position = groupArrayList.getGroupPositionStart(group) + groupArrayList.getGroupItemsSize(group);
+                    groupArrayList.appendGroupItems(group, itemsCopy);
+                    if (recorder != null) {
+                        recorder.onInserted(position, itemsCopy.size());
+                    }
+                }
+            });
+        }
+
+        /**
+         * 向指定组中的指定位置添加数据
+         *
+         * @param group           分组
+         * @param positionInGroup 组内的位置
+         * @param items           待添加的数据
+         * @see #appendGroupItems(int, Collection)
+         * @see GroupArrayList#insertGroupItems(int, int, Collection)
+         */
+        @NonNull
+        public Transaction insertGroupItems(int group, int positionInGroup, @Nullable Collection<UnionTypeItemObject> items) {
+            final List<UnionTypeItemObject> itemsCopy = copyOf(items);
+            return add(new RangeAction() {
+                @Override
+                void onAction(@NonNull GroupArrayList groupArrayList, @Nullable UpdateRecorder recorder) {
+                    if (itemsCopy == null || itemsCopy.isEmpty()) {
+                        return;
+                    }
+                    final int groupItemsSize = groupArrayList.getGroupItemsSize(group);
+                    final int insertPosition = Math.max(0, Math.min(positionInGroup, groupItemsSize));
+                    final int position = groupArrayList.getGroupPositionStart(group) + insertPosition;
+                    groupArrayList.insertGroupItems(group, insertPosition, itemsCopy);
+                    if (recorder != null) {
+                        recorder.onInserted(position, itemsCopy.size());
+                    }
+                }
+            });
+        }
+
+        /**
+         * 清除指定组下指定位置区域的数据
+         *
+         * @param group           分组
+         * @param positionInGroup 组内的位置
+         * @param size            删除的数量
+         * @see #appendGroupItems(int, Collection)
+         * @see GroupArrayList#removeGroupItems(int, int, int)
+         */
+        @NonNull
+        public Transaction removeGroupItems(int group, int positionInGroup, int size) {
+            return add(new RangeAction() {
+                @Override
+                void onAction(@NonNull GroupArrayList groupArrayList, @Nullable UpdateRecorder recorder) {
+                    if (positionInGroup < 0 || size <= 0) {
+                        return;
+                    }
+                    final int removeSize = Math.min(size, groupArrayList.getGroupItemsSize(group) - positionInGroup);
+                    if (removeSize <= 0) {
+                        return;
+                    }
+                    final int position = groupArrayList.getGroupPositionStart(group) + positionInGroup;
+                    groupArrayList.removeGroupItems(group, positionInGroup, removeSize);
+                    if (recorder != null) {
+                        recorder.onRemoved(position, removeSize);
+                    }
+                }
+            });
+        }
+
+        /**
+         * 从指定组内的指定位置开始依次替换数据, 不改变该组的数据量. 超出该组范围的部分被忽略.
+         *
+         * @param group           分组
+         * @param positionInGroup 组内的开始位置
+         * @param items           替换后的数据
+         * @see #appendGroupItems(int, Collection)
+         */
+        @NonNull
+        public Transaction replaceGroupItems(int group, int positionInGroup, @NonNull List<UnionTypeItemObject> items) {
+            final List<UnionTypeItemObject> itemsCopy = copyOf(items);
+            return add(new RangeAction() {
+                @Override
+                void onAction(@NonNull GroupArrayList groupArrayList, @Nullable UpdateRecorder recorder) {
+                    final int start = Math.max(0, positionInGroup);
+                    final int end = Math.min(groupArrayList.getGroupItemsSize(group), positionInGroup + itemsCopy.size());
+                    if (start >= end) {
+                        return;
+                    }
+                    final List<UnionTypeItemObject> groupItems = groupArrayList.getGroupItems(group);
+                    for (int i = start; i < end; i++) {
+                        groupItems.set(i, itemsCopy.get(i - positionInGroup));
+                    }
+                    if (recorder != null) {
+                        recorder.onChanged(groupArrayList.getGroupPositionStart(group) + start, end - start, null);
+                    }
+                }
+            });
+        }
+
+        /**
+         * 替换指定组下的所有数据. items 为 null 时清空该组.
+         *
+         * @param group 分组
+         * @param items 组内数据
+         * @see #appendGroupItems(int, Collection)
+         * @see GroupArrayList#setGroupItems(int, Collection)
+         */
+        @NonNull
+        public Transaction setGroupItems(int group, @Nullable Collection<UnionTypeItemObject> items) {
+            final List<UnionTypeItemObject> itemsCopy = copyOf(items);
+            return add(new SetGroupItemsAction(group) {
+                @Override
+                void onAction(@NonNull GroupArrayList groupArrayList, @Nullable UpdateRecorder recorder) {
+                    final int position = groupArrayList.getGroupPositionStart(group);
+                    final int oldSize = groupArrayList.getGroupItemsSize(group);
+                    final int newSize = itemsCopy == null ? 0 : itemsCopy.size();
+                    groupArrayList.setGroupItems(group, itemsCopy);
+                    if (recorder != null) {
+                        recordReplaced(recorder, position, oldSize, newSize);
+                    }
+                }
+            });
+        }
+
+        /**
+         * 替换指定组下的所有数据, 并直接使用预先计算好的 updateScript 中该分组的变化, 不再计算 diff
+         * (参与同一批计算的 action 都是 {@link #appendGroupItems(int, Collection)} 这类能够记录精确变化的 action 时).
+         * 如果 updateScript 中该分组变化前后的数据量或者指纹与当前数据和 items 不一致 (见 {@link UpdateScript#matchesGroup(int, List, List)}),
+         * 按 {@link #setGroupItems(int, Collection)} 处理.
+         *
+         * @param group        分组
+         * @param items        组内数据, 与 updateScript 中该分组变化之后的数据一致
+         * @param updateScript 基于该分组当前的数据与 items 计算得到的变化, 例如在服务端通过 {@link UpdateScript.Builder#diffGroup(int, List, List)} 计算
+         */
+        @NonNull
+        public Transaction setGroupItems(int group,
+                                         @Nullable Collection<UnionTypeItemObject> items,
+                                         @NonNull UpdateScript updateScript) {
+            final List<UnionTypeItemObject> itemsCopy = copyOf(items);
+            return add(new SetGroupItemsAction(group) {
+                @Override
+                void onAction(@NonNull GroupArrayList groupArrayList, @Nullable UpdateRecorder recorder) {
+                    final int position = groupArrayList.getGroupPositionStart(group);
+                    final int oldSize = groupArrayList.getGroupItemsSize(group);
+                    final int newSize = itemsCopy == null ? 0 : itemsCopy.size();
+                    // 在替换之前校验, 分组被替换之后就无法再读取旧的数据
+                    final boolean matches = recorder != null
+                            && updateScript.matchesGroup(group, groupArrayList.peekGroupItems(group), itemsCopy);
+                    groupArrayList.setGroupItems(group, itemsCopy);
+                    if (recorder == null) {
+                        return;
+                    }
+                    if (matches) {
+                        updateScript.dispatchGroupUpdatesTo(group, position, recorder);
+                    } else {
+                        recordReplaced(recorder, position, oldSize, newSize);
+                    }
+                }
+            });
+        }
+
+        @Nullable
+        private static List<UnionTypeItemObject> copyOf(@Nullable Collection<UnionTypeItemObject> items) {
+            return items == null ? null : new ArrayList<>(items);
+        }
+
+        public void commit() {
+            this.commit(null);
+        }
+
+        public void commit(@Nullable Runnable batchCommitEndCallback) {
+            this.commit(null, batchCommitEndCallback);
+        }
+
+        /**
+         * 提交之后两个回调总是在 UI 线程上执行, 即使该 transaction 因积压超出上限而被丢弃 (见 {@link #isDropped()}).
+         *
+         * @param batchCommitStartCallback 所在的批次分发之前执行
+         * @param batchCommitEndCallback   所在的批次分发之后执行
+         */
+        public void commit(@Nullable Runnable batchCommitStartCallback,
+                           @Nullable Runnable batchCommitEndCallback) {
+            checkNotCommitted();
+            mCommit = true;
+            mBatchCommitStartCallback = batchCommitStartCallback;
+            mBatchCommitEndCallback = batchCommitEndCallback;
+            mTransactionPipeline.commit(this);
+        }
+
+        private void checkNotCommitted() {
+            if (mCommit) {
+                throw new IllegalStateException("transaction already committed");
+            }
+        }
+
+        /**
+         * 在提交的回调中调用时, 返回该 transaction 是否因积压超出上限而被丢弃 (其修改被之后的 transaction 整体覆盖, 没有生效).
+         *
+         * @see CommitPolicy#OVERFLOW_DROP_OLDEST
+         */
+        public boolean isDropped() {
+            synchronized (mTransactionPipeline.mTransactionListLock) {
+                return mDropped;
+            }
+        }
+
+        public interface Action {
+            void onAction(@NonNull Transaction transaction, @NonNull GroupArrayList groupArrayList);
+        }
+
+        /**
+         * 内置的能够记录精确变化区域的 action
+         */
+        private abstract static class RangeAction implements Action {
+
+            @Override
+            public final void onAction(@NonNull Transaction transaction, @NonNull GroupArrayList groupArrayList) {
+                onAction(groupArrayList, null);
+            }
+
+            /**
+             * @param recorder 不为 null 时, 需要将本次修改产生的变化按顺序记录到 recorder 中
+             */
+            abstract void onAction(@NonNull GroupArrayList groupArrayList, @Nullable UpdateRecorder recorder);
+        }
+
+        /**
+         * 整体替换一个分组的 action, 可以被之后对同一分组的整体替换覆盖
+         */
+        private abstract static class SetGroupItemsAction extends RangeAction {
+
+            private final int mGroup;
+
+            private SetGroupItemsAction(int group) {
+                mGroup = group;
+            }
+        }
+
+    }
+
+    /**
+     * transaction 的合并与积压策略.
+     * <pre>
+     * windowMs: 合并窗口, 大于 0 时一次提交之后等待 windowMs 毫秒, 窗口内的所有提交合并为一批计算 diff. 默认 0, 立即处理.
+     * maxBatchSize: 一批中最多合并的 transaction 数量, 超出的部分在下一批中处理. 默认不限制.
+     * maxPendingSize: 等待处理的 transaction 的最大数量. 默认不限制.
+     * overflowStrategy: 等待处理的数量超出 maxPendingSize 时的处理方式:
+     *     {@link #OVERFLOW_MERGE} 不再受 maxBatchSize 限制, 下一批一次处理所有等待中的 transaction (默认)
+     *     {@link #OVERFLOW_DROP_OLDEST} 从最早提交的开始丢弃会被之后的提交完全覆盖的 transaction:
+     *         只包含 {@link Transaction#setGroupItems(int, Collection)} 并且这些分组之后都会被再次整体替换.
+     *         其它 transaction (追加, 插入, 删除等) 不会被丢弃, 没有可以丢弃的 transaction 时与 {@link #OVERFLOW_MERGE} 相同.
+     *         被丢弃的 transaction 不会生效, 其回调仍然按顺序执行, 可以通过 {@link Transaction#isDropped()} 区分
+     * </pre>
+     */
+    public static final class CommitPolicy {
+
+        public static final int OVERFLOW_MERGE = 0;
+        public static final int OVERFLOW_DROP_OLDEST = 1;
+
+        @NonNull
+        public static final CommitPolicy DEFAULT = new Builder().build();
+
+        private final long mWindowMs;
+        private final int mMaxBatchSize;
+        private final int mMaxPendingSize;
+        private final int mOverflowStrategy;
+
+        private CommitPolicy(@NonNull Builder builder) {
+            mWindowMs = builder.mWindowMs;
+            mMaxBatchSize = builder.mMaxBatchSize;
+            mMaxPendingSize = builder.mMaxPendingSize;
+            mOverflowStrategy = builder.mOverflowStrategy;
+        }
+
+        public long getWindowMs() {
+            return mWindowMs;
+        }
+
+        public int getMaxBatchSize() {
+            return mMaxBatchSize;
+        }
+
+        public int getMaxPendingSize() {
+            return mMaxPendingSize;
+        }
+
+        public int getOverflowStrategy() {
+            return mOverflowStrategy;
+        }
+
+        public static class Builder {
+
+            private long mWindowMs;
+            private int mMaxBatchSize = Integer.MAX_VALUE;
+            private int mMaxPendingSize = Integer.MAX_VALUE;
+            private int mOverflowStrategy = OVERFLOW_MERGE;
+
+            @NonNull
+            public Builder setWindowMs(long windowMs) {
+                if (windowMs < 0) {
+                    throw new IllegalArgumentException("invalid window " + windowMs);
+                }
+                mWindowMs = windowMs;
+                return this;
+            }
+
+            @NonNull
+            public Builder setMaxBatchSize(int maxBatchSize) {
+                if (maxBatchSize <= 0) {
+                    throw new IllegalArgumentException("invalid max batch size " + maxBatchSize);
+                }
+                mMaxBatchSize = maxBatchSize;
+                return this;
+            }
+
+            @NonNull
+            public Builder setMaxPendingSize(int maxPendingSize, int overflowStrategy) {
+                if (maxPendingSize <= 0) {
+                    throw new IllegalArgumentException("invalid max pending size " + maxPendingSize);
+                }
+                if (overflowStrategy != OVERFLOW_MERGE && overflowStrategy != OVERFLOW_DROP_OLDEST) {
+                    throw new IllegalArgumentException("unknown overflow strategy " + overflowStrategy);
+                }
+                mMaxPendingSize = maxPendingSize;
+                mOverflowStrategy = overflowStrategy;
+                return this;
+            }
+
+            @NonNull
+            public CommitPolicy build() {
+                return new CommitPolicy(this);
+            }
+        }
+    }
+
+    /**
+     * transaction 的提交统计, 用于衡量 {@link CommitPolicy} 的合并效果
+     */
+    public static final class CommitStats {
+
+        private long mCommittedCount;
+        private long mDroppedCount;
+        private long mBatchCount;
+        private long mBatchedCount;
+        private int mLastBatchSize;
+        private int mMaxBatchSize;
+
+        private CommitStats() {
+        }
+
+        private CommitStats(@NonNull CommitStats input) {
+            mCommittedCount = input.mCommittedCount;
+            mDroppedCount = input.mDroppedCount;
+            mBatchCount = input.mBatchCount;
+            mBatchedCount = input.mBatchedCount;
+            mLastBatchSize = input.mLastBatchSize;
+            mMaxBatchSize = input.mMaxBatchSize;
+        }
+
+        private void onBatch(int batchSize) {
+            mBatchCount++;
+            mBatchedCount += batchSize;
+            mLastBatchSize = batchSize;
+            mMaxBatchSize = Math.max(mMaxBatchSize, batchSize);
+        }
+
+        /**
+         * @return 提交的 transaction 总数
+         */
+        public long getCommittedCount() {
+            return mCommittedCount;
+        }
+
+        /**
+         * @return 因积压超出上限而被丢弃的 transaction 总数
+         */
+        public long getDroppedCount() {
+            return mDroppedCount;
+        }
+
+        /**
+         * @return 处理的批次总数, 每一批计算一次 diff
+         */
+        public long getBatchCount() {
+            return mBatchCount;
+        }
+
+        /**
+         * @return 最近一批中合并的 transaction 数量
+         */
+        public int getLastBatchSize() {
+            return mLastBatchSize;
+        }
+
+        /**
+         * @return 单批中合并的 transaction 数量的最大值
+         */
+        public int getMaxBatchSize() {
+            return mMaxBatchSize;
+        }
+
+        /**
+         * @return 平均每批合并的 transaction 数量
+         */
+        public float getAverageBatchSize() {
+            if (mBatchCount == 0) {
+                return 0;
+            }
+            return (float) mBatchedCount / mBatchCount;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "CommitStats{" +
+                    "committed=" + mCommittedCount +
+                    ", dropped=" + mDroppedCount +
+                    ", batches=" + mBatchCount +
+                    ", lastBatchSize=" + mLastBatchSize +
+                    ", maxBatchSize=" + mMaxBatchSize +
+                    '}';
+        }
+    }
+
+    public static final class ReadOnly {
+
+        @NonNull
+        private final GroupArrayList mGroupArrayListReadOnly;
+
+        /**
+         * 最近一次按位置查询命中的分组. 绑定与布局通常按位置连续访问, 命中同一分组时无需再查找分组索引.
+         * GroupHit 不可变, 并发时最多丢失一次缓存.
+         */
+        @Nullable
+        private volatile GroupHit mLastGroupHit;
+
+        private ReadOnly(@NonNull GroupArrayList groupArrayList) {
+            // 标记为共享之后 groupArrayList 的内容不会再变化, 直接使用而无需复制
+            groupArrayList.share();
+            mGroupArrayListReadOnly = groupArrayList;
+            // 在创建快照的线程上预先建立分组索引, 之后的查询不会再修改索引, 可以在任意线程上读取.
+            // 不按全局位置展开数据, 每一批的开销只与分组数以及被修改的分组有关.
+            mGroupArrayListReadOnly.size();
+        }
+
+        /**
+         * @return 包含指定位置的分组, 如果没有找到返回 null
+         */
+        @Nullable
+        private GroupHit findGroupHit(int position) {
+            final GroupHit lastGroupHit = mLastGroupHit;
+            if (lastGroupHit != null && lastGroupHit.contains(position)) {
+                return lastGroupHit;
+            }
+
+            final long groupAndPosition = mGroupArrayListReadOnly.getGroupAndPositionPacked(position);
+            if (groupAndPosition == GroupArrayList.NO_GROUP_AND_POSITION) {
+                return null;
+            }
+            final int group = GroupArrayList.unpackGroup(groupAndPosition);
+            final List<UnionTypeItemObject> groupItems = mGroupArrayListReadOnly.peekGroupItems(group);
+            if (groupItems == null) {
+                return null;
+            }
+            final GroupHit groupHit = new GroupHit(group,
+                    position - GroupArrayList.unpackPositionInGroup(groupAndPosition), groupItems);
+            mLastGroupHit = groupHit;
+            return groupHit;
+        }
+
+        public int getGroupItemsSize(int group) {
+            return mGroupArrayListReadOnly.getGroupItemsSize(group);
+        }
+
+        public int getGroupPositionStart(int group) {
+            return mGroupArrayListReadOnly.getGroupPositionStart(group);
+        }
+
+        @Nullable
+        public int[] getGroupAndPosition(int position) {
+            final long groupAndPosition = getGroupAndPositionPacked(position);
+            if (groupAndPosition == GroupArrayList.NO_GROUP_AND_POSITION) {
+                return null;
+            }
+            return new int[]{GroupArrayList.unpackGroup(groupAndPosition), GroupArrayList.unpackPositionInGroup(groupAndPosition)};
+        }
+
+        /**
+         * @see GroupArrayList#getGroupAndPositionPacked(int)
+         */
+        public long getGroupAndPositionPacked(int position) {
+            final GroupHit groupHit = findGroupHit(position);
+            if (groupHit == null) {
+                return GroupArrayList.NO_GROUP_AND_POSITION;
+            }
+            return GroupArrayList.pack(groupHit.mGroup, position - groupHit.mStart);
+        }
+
+        public int size() {
+            return mGroupArrayListReadOnly.size();
+        }
+
+        @Nullable
+        public UnionTypeItemObject getGroupItem(int group, int positionInGroup) {
+            return mGroupArrayListReadOnly.getGroupItem(group, positionInGroup);
+        }
+
+        /**
+         * 读取数据当前的 unionType, 通过 {@link UnionTypeItemObject#update(int, Object)} 修改之后再通知变化也能得到新的 unionType.
+         *
+         * @return 指定位置的数据的 unionType, 如果没有找到或者数据为 null 返回 {@link UnionTypeItemObject#UNION_TYPE_NULL}
+         */
+        public int getUnionType(int position) {
+            final UnionTypeItemObject item = getItem(position);
+            return item == null ? UnionTypeItemObject.UNION_TYPE_NULL : item.unionType;
+        }
+
+        @Nullable
+        public UnionTypeItemObject getItem(int position) {
+            final GroupHit groupHit = findGroupHit(position);
+            if (groupHit == null) {
+                return null;
+            }
+            return groupHit.mGroupItems.get(position - groupHit.mStart);
+        }
+
+        /**
+         * @return 指定位置的数据的 id, 如果没有找到返回 {@link UnionTypeItemObject#NO_ID}
+         * @see UnionTypeItemObject#getItemId()
+         */
+        public long getItemId(int position) {
+            final UnionTypeItemObject itemObject = getItem(position);
+            if (itemObject == null) {
+                return UnionTypeItemObject.NO_ID;
+            }
+            return itemObject.getItemId();
+        }
+
+        private static final class GroupHit {
+            private final int mGroup;
+            /**
+             * 该分组在全局所在的开始位置
+             */
+            private final int mStart;
+            @NonNull
+            private final List<UnionTypeItemObject> mGroupItems;
+
+            private GroupHit(int group, int start, @NonNull List<UnionTypeItemObject> groupItems) {
+                mGroup = group;
+                mStart = start;
+                mGroupItems = groupItems;
+            }
+
+            private boolean contains(int position) {
+                return position >= mStart && position - mStart < mGroupItems.size();
+            }
+        }
+    }
+
+}
@@ -35,6 +35,34 @@ public final class UnionTypeItemObject {
         return null;
     }
 
+    /**
+     * 没有数据时的 unionType, 与 RecyclerView.INVALID_TYPE 相同
+     */
+    public static final int UNION_TYPE_NULL = -1;
+
+    /**
+     * 没有 id, 与 RecyclerView.NO_ID 相同
+     */
+    public static final long NO_ID = -1L;
+
+    /**
+     * 由 unionType 与 itemObject 的 {@link StableId} 组合得到的 id, 用于
+     * {@link androidx.recyclerview.widget.RecyclerView.Adapter#getItemId(int)}.
+     * 不同的数据需要得到不同的 id, 因此 itemObject 没有实现 {@link StableId} 时没有 id.
+     *
+     * @return 稳定的 id, itemObject 没有实现 {@link StableId} 时返回 {@link #NO_ID}, 实现了时不会返回 {@link #NO_ID}
+     */
+    public long getItemId() {
+        if (!(this.itemObject instanceof StableId)) {
+            return NO_ID;
+        }
+        final long stableId = ((StableId) this.itemObject).getStableId();
+        // 乘以一个奇数使 unionType 不同而 stableId 相近的数据不会得到相同的 id
+        final long id = stableId * 0x9E3779B97F4A7C15L + this.unionType;
+        // 每个 unionType 下都有一个 stableId 会得到 NO_ID, 映射为 0
+        return id == NO_ID ? 0L : id;
+    }
+
     /**
      * @param other 待比较的目标对象
      * @return 如果可以复用同一个 ViewHolder 返回 true, 否则返回 false.
@@ -75,4 +103,23 @@ public final class UnionTypeItemObject {
         return false;
     }
 
+    /**
+     * @param other 新的数据
+     * @return 描述变化的 payload, 没有时返回 null.
+     * @see DeepDiff#getChangePayload(Object)
+     * @see androidx.recyclerview.widget.DiffUtil.Callback#getChangePayload(int, int)
+     */
+    @Nullable
+    public Object getChangePayload(@NonNull UnionTypeItemObject other) {
+        if (this.unionType != other.unionType) {
+            return null;
+        }
+
+        if (this.itemObject instanceof DeepDiff) {
+            return ((DeepDiff) this.itemObject).getChangePayload(other.itemObject);
+        }
+
+        return null;
+    }
+
 }
@@ -0,0 +1,504 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 预先计算好的列表变化, 可以在服务端或者后台任务中基于新旧数据计算一次, 与新的数据一起下发,
+ * 在客户端直接应用而无需再计算 diff.
+ * <p>
+ * 按分组记录, 每个分组包含变化前后的数据量以及按顺序生效的 insert / remove / move / change 操作,
+ * 操作中的位置都是组内的位置, 并且基于前一个操作生效之后的数据 (与 ListUpdateCallback 相同).
+ * change 操作不携带 payload, 对应的 ViewHolder 会完整刷新.
+ * <p>
+ * 每个分组同时记录变化前后数据的指纹 (见 {@link #fingerprint(List)}), 应用之前通过
+ * {@link #matchesGroup(int, List, List)} 校验脚本确实是基于当前的数据计算的.
+ * <p>
+ * 序列化格式见 {@link #toIntArray()}, Java 序列化同样通过该格式进行, 反序列化时会完整校验.
+ */
+public final class UpdateScript implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int FORMAT_VERSION = 2;
+    /**
+     * 不包含指纹的格式
+     */
+    private static final int FORMAT_VERSION_1 = 1;
+
+    /**
+     * 没有记录指纹, 此时只校验数据量
+     */
+    public static final long NO_FINGERPRINT = 0L;
+
+    public static final int OP_INSERT = 0;
+    public static final int OP_REMOVE = 1;
+    public static final int OP_MOVE = 2;
+    public static final int OP_CHANGE = 3;
+
+    /**
+     * 按分组从小到大排列
+     */
+    @NonNull
+    private final int[] mGroups;
+    @NonNull
+    private final int[] mOldSizes;
+    @NonNull
+    private final int[] mNewSizes;
+    @NonNull
+    private final long[] mOldFingerprints;
+    @NonNull
+    private final long[] mNewFingerprints;
+    /**
+     * 第 i 个分组的操作为 mOps[mOpStarts[i] .. mOpStarts[i + 1]), 每个操作依次占用 3 个位置: type, first, second
+     */
+    @NonNull
+    private final int[] mOpStarts;
+    @NonNull
+    private final int[] mOps;
+
+    private UpdateScript(@NonNull int[] groups,
+                         @NonNull int[] oldSizes,
+                         @NonNull int[] newSizes,
+                         @NonNull long[] oldFingerprints,
+                         @NonNull long[] newFingerprints,
+                         @NonNull int[] opStarts,
+                         @NonNull int[] ops) {
+        mGroups = groups;
+        mOldSizes = oldSizes;
+        mNewSizes = newSizes;
+        mOldFingerprints = oldFingerprints;
+        mNewFingerprints = newFingerprints;
+        mOpStarts = opStarts;
+        mOps = ops;
+    }
+
+    /**
+     * @return 包含变化的所有分组, 按分组从小到大排列
+     */
+    @NonNull
+    public int[] getGroups() {
+        return mGroups.clone();
+    }
+
+    /**
+     * @return 该分组在变化之前的数据量, 分组不在脚本中时返回 -1
+     */
+    public int getOldSize(int group) {
+        final int index = Arrays.binarySearch(mGroups, group);
+        return index < 0 ? -1 : mOldSizes[index];
+    }
+
+    /**
+     * @return 该分组在变化之后的数据量, 分组不在脚本中时返回 -1
+     */
+    public int getNewSize(int group) {
+        final int index = Arrays.binarySearch(mGroups, group);
+        return index < 0 ? -1 : mNewSizes[index];
+    }
+
+    /**
+     * 数据的指纹, 由每个数据的 unionType 与 {@link StableId} 按顺序计算. 没有实现 StableId 的数据只有 unionType 参与计算.
+     *
+     * @return 不会是 {@link #NO_FINGERPRINT}
+     */
+    public static long fingerprint(@Nullable List<UnionTypeItemObject> items) {
+        long fingerprint = 0xCBF29CE484222325L;
+        if (items != null) {
+            for (UnionTypeItemObject item : items) {
+                long key = -1L;
+                if (item != null) {
+                    key = item.unionType * 0x9E3779B97F4A7C15L;
+                    if (item.itemObject instanceof StableId) {
+                        key += ((StableId) item.itemObject).getStableId();
+                    }
+                }
+                // splitmix64 finalizer
+                key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+                key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+                key ^= key >>> 31;
+                fingerprint = (fingerprint ^ key) * 0x100000001B3L;
+            }
+        }
+        return fingerprint == NO_FINGERPRINT ? 1L : fingerprint;
+    }
+
+    /**
+     * 校验该分组变化前后的数据是否与脚本一致: 数据量相同, 并且记录了指纹时指纹也相同. O(N)
+     *
+     * @return 分组不在脚本中时返回 false
+     */
+    public boolean matchesGroup(int group,
+                                @Nullable List<UnionTypeItemObject> oldItems,
+                                @Nullable List<UnionTypeItemObject> newItems) {
+        final int index = Arrays.binarySearch(mGroups, group);
+        if (index < 0) {
+            return false;
+        }
+        final int oldSize = oldItems == null ? 0 : oldItems.size();
+        final int newSize = newItems == null ? 0 : newItems.size();
+        if (mOldSizes[index] != oldSize || mNewSizes[index] != newSize) {
+            return false;
+        }
+        return (mOldFingerprints[index] == NO_FINGERPRINT || mOldFingerprints[index] == fingerprint(oldItems))
+                && (mNewFingerprints[index] == NO_FINGERPRINT || mNewFingerprints[index] == fingerprint(newItems));
+    }
+
+    /**
+     * 按顺序分发该分组的所有操作
+     *
+     * @param offset 该分组在列表中的开始位置, 分发时所有位置加上 offset
+     */
+    public void dispatchGroupUpdatesTo(int group, int offset, @NonNull ListUpdateListener listener) {
+        final int index = Arrays.binarySearch(mGroups, group);
+        if (index < 0) {
+            return;
+        }
+        for (int i = mOpStarts[index]; i < mOpStarts[index + 1]; i += 3) {
+            final int first = mOps[i + 1];
+            final int second = mOps[i + 2];
+            switch (mOps[i]) {
+                case OP_INSERT:
+                    listener.onInserted(first + offset, second);
+                    break;
+                case OP_REMOVE:
+                    listener.onRemoved(first + offset, second);
+                    break;
+                case OP_MOVE:
+                    listener.onMoved(first + offset, second + offset);
+                    break;
+                case OP_CHANGE:
+                    listener.onChanged(first + offset, second, null);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * 紧凑的序列化格式:
+     * [version, groupCount,
+     *   group, oldSize, newSize, oldFingerprint (高 32 位, 低 32 位), newFingerprint (高 32 位, 低 32 位),
+     *   opCount, (type, first, second) * opCount,
+     *   ...]
+     * 版本 1 不包含指纹, 仍然可以通过 {@link #fromIntArray(int[])} 读取.
+     * </pre>
+     */
+    @NonNull
+    public int[] toIntArray() {
+        final int[] result = new int[2 + mGroups.length * 8 + mOps.length];
+        int index = 0;
+        result[index++] = FORMAT_VERSION;
+        result[index++] = mGroups.length;
+        for (int i = 0; i < mGroups.length; i++) {
+            result[index++] = mGroups[i];
+            result[index++] = mOldSizes[i];
+            result[index++] = mNewSizes[i];
+            result[index++] = (int) (mOldFingerprints[i] >>> 32);
+            result[index++] = (int) mOldFingerprints[i];
+            result[index++] = (int) (mNewFingerprints[i] >>> 32);
+            result[index++] = (int) mNewFingerprints[i];
+            final int opLength = mOpStarts[i + 1] - mOpStarts[i];
+            result[index++] = opLength / 3;
+            System.arraycopy(mOps, mOpStarts[i], result, index, opLength);
+            index += opLength;
+        }
+        return result;
+    }
+
+    /**
+     * @throws IllegalArgumentException 格式不正确, 或者某个分组的操作与其变化前后的数据量不一致
+     * @see #toIntArray()
+     */
+    @NonNull
+    public static UpdateScript fromIntArray(@NonNull int[] data) {
+        if (data.length < 2 || (data[0] != FORMAT_VERSION && data[0] != FORMAT_VERSION_1)) {
+            throw new IllegalArgumentException("unsupported update script format");
+        }
+        final boolean hasFingerprints = data[0] != FORMAT_VERSION_1;
+        final int groupHeaderSize = hasFingerprints ? 8 : 4;
+        final Builder builder = new Builder();
+        final int groupCount = data[1];
+        int index = 2;
+        for (int i = 0; i < groupCount; i++) {
+            if (index + groupHeaderSize > data.length) {
+                throw new IllegalArgumentException("update script truncated");
+            }
+            final int group = data[index++];
+            final int oldSize = data[index++];
+            final int newSize = data[index++];
+            long oldFingerprint = NO_FINGERPRINT;
+            long newFingerprint = NO_FINGERPRINT;
+            if (hasFingerprints) {
+                oldFingerprint = (long) data[index++] << 32 | (data[index++] & 0xFFFFFFFFL);
+                newFingerprint = (long) data[index++] << 32 | (data[index++] & 0xFFFFFFFFL);
+            }
+            final int opCount = data[index++];
+            if (opCount < 0 || index + opCount * 3L > data.length) {
+                throw new IllegalArgumentException("update script truncated");
+            }
+            if (builder.mGroupBuilders.containsKey(group)) {
+                throw new IllegalArgumentException("duplicate group " + group);
+            }
+            final GroupBuilder groupBuilder = builder.beginGroup(group, oldSize, oldFingerprint);
+            for (int j = 0; j < opCount; j++) {
+                groupBuilder.op(data[index++], data[index++], data[index++]);
+            }
+            groupBuilder.end(newSize, newFingerprint);
+        }
+        if (index != data.length) {
+            throw new IllegalArgumentException("update script has trailing data");
+        }
+        return builder.build();
+    }
+
+    /**
+     * 通过 {@link #toIntArray()} 序列化, 反序列化时经过 {@link #fromIntArray(int[])} 的完整校验
+     */
+    private Object writeReplace() {
+        return new SerializedForm(toIntArray());
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("UpdateScript must be deserialized through SerializedForm");
+    }
+
+    private static final class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @NonNull
+        private final int[] mData;
+
+        private SerializedForm(@NonNull int[] data) {
+            mData = data;
+        }
+
+        private Object readResolve() throws InvalidObjectException {
+            try {
+                return fromIntArray(mData);
+            } catch (RuntimeException e) {
+                final InvalidObjectException exception = new InvalidObjectException("invalid update script: " + e.getMessage());
+                exception.initCause(e);
+                throw exception;
+            }
+        }
+    }
+
+    /**
+     * 构建 UpdateScript. 每个分组可以通过 {@link #diffGroup(int, List, List)} 计算, 也可以通过 {@link #beginGroup(int, int, long)} 逐条添加操作.
+     */
+    public static final class Builder {
+
+        /**
+         * 分组 -> 该分组的操作 (含数据量), 按分组排序后输出
+         */
+        @NonNull
+        private final TreeMap<Integer, GroupBuilder> mGroupBuilders = new TreeMap<>();
+
+        /**
+         * 基于 {@link StableId} 计算该分组的变化 (见 {@link KeyedDiff}). 数据没有实现 StableId 或者 stable id 重复时,
+         * 记录为删除全部旧数据并插入全部新数据. 同时记录新旧数据的指纹.
+         */
+        @NonNull
+        public Builder diffGroup(int group,
+                                 @Nullable List<UnionTypeItemObject> oldItems,
+                                 @Nullable List<UnionTypeItemObject> newItems) {
+            final List<UnionTypeItemObject> oldItemsNonNull = oldItems == null ? Collections.emptyList() : oldItems;
+            final List<UnionTypeItemObject> newItemsNonNull = newItems == null ? Collections.emptyList() : newItems;
+
+            final long oldFingerprint = fingerprint(oldItemsNonNull);
+            GroupBuilder groupBuilder = beginGroup(group, oldItemsNonNull.size(), oldFingerprint);
+            if (!KeyedDiff.calculateDiff(oldItemsNonNull, newItemsNonNull, true, groupBuilder)) {
+                groupBuilder = beginGroup(group, oldItemsNonNull.size(), oldFingerprint);
+                groupBuilder.onRemoved(0, oldItemsNonNull.size());
+                groupBuilder.onInserted(0, newItemsNonNull.size());
+            }
+            groupBuilder.end(newItemsNonNull.size(), fingerprint(newItemsNonNull));
+            return this;
+        }
+
+        /**
+         * 与 {@link #beginGroup(int, int, long)} 相同, 但不记录指纹, 应用时只校验数据量
+         */
+        @NonNull
+        public GroupBuilder beginGroup(int group, int oldSize) {
+            return beginGroup(group, oldSize, NO_FINGERPRINT);
+        }
+
+        /**
+         * 开始记录一个分组的操作, 已经记录过的同一分组会被替换. 记录完成后需要调用 {@link GroupBuilder#end(int, long)}.
+         *
+         * @param oldSize        该分组在变化之前的数据量
+         * @param oldFingerprint 该分组在变化之前的数据的指纹 (见 {@link #fingerprint(List)}), 或者 {@link #NO_FINGERPRINT}
+         */
+        @NonNull
+        public GroupBuilder beginGroup(int group, int oldSize, long oldFingerprint) {
+            if (oldSize < 0) {
+                throw new IllegalArgumentException("invalid old size " + oldSize + " of group " + group);
+            }
+            final GroupBuilder groupBuilder = new GroupBuilder(group, oldSize, oldFingerprint);
+            mGroupBuilders.put(group, groupBuilder);
+            return groupBuilder;
+        }
+
+        /**
+         * @throws IllegalStateException 有分组没有调用 {@link GroupBuilder#end(int)}
+         */
+        @NonNull
+        public UpdateScript build() {
+            final int groupCount = mGroupBuilders.size();
+            final int[] groups = new int[groupCount];
+            final int[] oldSizes = new int[groupCount];
+            final int[] newSizes = new int[groupCount];
+            final long[] oldFingerprints = new long[groupCount];
+            final long[] newFingerprints = new long[groupCount];
+            final int[] opStarts = new int[groupCount + 1];
+            int opLength = 0;
+            for (GroupBuilder groupBuilder : mGroupBuilders.values()) {
+                opLength += groupBuilder.mOpsSize;
+            }
+            final int[] ops = new int[opLength];
+
+            int index = 0;
+            int opIndex = 0;
+            for (GroupBuilder groupBuilder : mGroupBuilders.values()) {
+                if (groupBuilder.mNewSize < 0) {
+                    throw new IllegalStateException("group " + groupBuilder.mGroup + " not end");
+                }
+                groups[index] = groupBuilder.mGroup;
+                oldSizes[index] = groupBuilder.mOldSize;
+                newSizes[index] = groupBuilder.mNewSize;
+                oldFingerprints[index] = groupBuilder.mOldFingerprint;
+                newFingerprints[index] = groupBuilder.mNewFingerprint;
+                opStarts[index] = opIndex;
+                System.arraycopy(groupBuilder.mOps, 0, ops, opIndex, groupBuilder.mOpsSize);
+                opIndex += groupBuilder.mOpsSize;
+                index++;
+            }
+            opStarts[groupCount] = opIndex;
+            return new UpdateScript(groups, oldSizes, newSizes, oldFingerprints, newFingerprints, opStarts, ops);
+        }
+    }
+
+    /**
+     * 记录一个分组的操作, 位置为组内的位置. 同时校验每个操作都在当前的数据量范围内.
+     */
+    public static final class GroupBuilder implements ListUpdateListener {
+
+        private final int mGroup;
+        private final int mOldSize;
+        private final long mOldFingerprint;
+        private long mNewFingerprint = NO_FINGERPRINT;
+        /**
+         * 已记录的操作生效之后的数据量
+         */
+        private int mSize;
+        /**
+         * 调用 {@link #end(int, long)} 之前为 -1
+         */
+        private int mNewSize = -1;
+
+        @NonNull
+        private int[] mOps = new int[3 * 4];
+        private int mOpsSize;
+
+        private GroupBuilder(int group, int oldSize, long oldFingerprint) {
+            mGroup = group;
+            mOldSize = oldSize;
+            mOldFingerprint = oldFingerprint;
+            mSize = oldSize;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            op(OP_INSERT, position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            op(OP_REMOVE, position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            op(OP_MOVE, fromPosition, toPosition);
+        }
+
+        /**
+         * payload 不会被记录
+         */
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            op(OP_CHANGE, position, count);
+        }
+
+        private void op(int type, int first, int second) {
+            if (mNewSize >= 0) {
+                throw new IllegalStateException("group " + mGroup + " already end");
+            }
+            switch (type) {
+                case OP_INSERT:
+                    checkRange(first >= 0 && first <= mSize && second >= 0);
+                    mSize += second;
+                    break;
+                case OP_REMOVE:
+                    checkRange(first >= 0 && second >= 0 && first + second <= mSize);
+                    mSize -= second;
+                    break;
+                case OP_MOVE:
+                    checkRange(first >= 0 && first < mSize && second >= 0 && second < mSize);
+                    break;
+                case OP_CHANGE:
+                    checkRange(first >= 0 && second >= 0 && first + second <= mSize);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown op type " + type);
+            }
+            if ((type == OP_INSERT || type == OP_REMOVE || type == OP_CHANGE) && second == 0) {
+                return;
+            }
+
+            if (mOpsSize + 3 > mOps.length) {
+                mOps = Arrays.copyOf(mOps, mOps.length * 2);
+            }
+            mOps[mOpsSize++] = type;
+            mOps[mOpsSize++] = first;
+            mOps[mOpsSize++] = second;
+        }
+
+        private void checkRange(boolean valid) {
+            if (!valid) {
+                throw new IllegalArgumentException("op out of range in group " + mGroup + ", current size " + mSize);
+            }
+        }
+
+        /**
+         * 与 {@link #end(int, long)} 相同, 但不记录指纹
+         */
+        public void end(int newSize) {
+            end(newSize, NO_FINGERPRINT);
+        }
+
+        /**
+         * @param newSize        该分组在变化之后的数据量, 需要与所有操作生效之后的数据量一致
+         * @param newFingerprint 该分组在变化之后的数据的指纹 (见 {@link #fingerprint(List)}), 或者 {@link #NO_FINGERPRINT}
+         */
+        public void end(int newSize, long newFingerprint) {
+            if (newSize != mSize) {
+                throw new IllegalArgumentException("group " + mGroup + " expect new size " + mSize + " but " + newSize);
+            }
+            mNewSize = newSize;
+            mNewFingerprint = newFingerprint;
+        }
+    }
+
+}
@@ -0,0 +1,286 @@
+package io.github.idonans.uniontype;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static io.github.idonans.uniontype.TestItems.item;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class GroupArrayListTest {
+
+    @Test
+    public void randomizedOperationsMatchModel() {
+        final Random random = new Random(3);
+        final GroupArrayList list = new GroupArrayList();
+        final TreeMap<Integer, List<UnionTypeItemObject>> model = new TreeMap<>();
+        for (int step = 0; step < 3000; step++) {
+            applyRandomOperation(random, list, model);
+            if (step % 50 == 0) {
+                assertMatches(model, list);
+            }
+        }
+        assertMatches(model, list);
+    }
+
+    /**
+     * 副本之间共享分组, 任何一方的修改都不会影响另一方
+     */
+    @Test
+    public void copiesAreIsolated() {
+        final Random random = new Random(5);
+        final GroupArrayList list = new GroupArrayList();
+        final TreeMap<Integer, List<UnionTypeItemObject>> model = new TreeMap<>();
+        final List<GroupArrayList> snapshots = new ArrayList<>();
+        final List<TreeMap<Integer, List<UnionTypeItemObject>>> snapshotModels = new ArrayList<>();
+        for (int step = 0; step < 2000; step++) {
+            applyRandomOperation(random, list, model);
+            if (step % 100 == 0) {
+                snapshots.add(new GroupArrayList(list));
+                snapshotModels.add(copyOf(model));
+            }
+            if (step % 300 == 0 && !snapshots.isEmpty()) {
+                // 修改较早的副本, 原数据以及其它副本不受影响
+                final int index = random.nextInt(snapshots.size());
+                applyRandomOperation(random, snapshots.get(index), snapshotModels.get(index));
+            }
+        }
+        assertMatches(model, list);
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertMatches(snapshotModels.get(i), snapshots.get(i));
+        }
+    }
+
+    /**
+     * 共享的分组不会使之后的副本一直持有之前的版本
+     */
+    @Test
+    public void copiesDoNotRetainPreviousVersions() throws InterruptedException {
+        GroupArrayList list = new GroupArrayList();
+        list.setGroupItems(0, Collections.singletonList(item(0)));
+        list.setGroupItems(1, Collections.singletonList(item(1)));
+        final WeakReference<GroupArrayList> first = new WeakReference<>(list);
+        for (int i = 0; i < 100; i++) {
+            list = new GroupArrayList(list);
+            // 交替修改两个分组 (复制被修改的分组), 每个副本都与上一个副本共享另一个分组
+            list.getGroupItems(i % 2).set(0, item(i));
+        }
+
+        for (int i = 0; i < 20 && first.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(first.get());
+        assertEquals(2, list.size());
+    }
+
+    @Test
+    public void changedGroupsOnlyContainModifiedGroups() {
+        final GroupArrayList oldList = new GroupArrayList();
+        oldList.setGroupItems(0, Arrays.asList(item(1), item(2)));
+        oldList.setGroupItems(1, Collections.singletonList(item(3)));
+        oldList.setGroupItems(2, Collections.singletonList(item(4)));
+        oldList.setGroupItems(3, Collections.emptyList());
+
+        final GroupArrayList newList = new GroupArrayList(oldList);
+        assertArrayEquals(new int[0], GroupArrayList.getChangedGroups(oldList, newList));
+
+        newList.appendGroupItems(1, Collections.singletonList(item(5)));
+        newList.removeGroup(2);
+        newList.setGroupItems(4, Collections.singletonList(item(6)));
+        assertArrayEquals(new int[]{1, 2, 4}, GroupArrayList.getChangedGroups(oldList, newList));
+        assertEquals(4, oldList.size());
+        assertEquals(5, newList.size());
+    }
+
+    @Test
+    public void largeGroupSpanningChunks() {
+        final List<UnionTypeItemObject> model = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            model.add(item(i));
+        }
+        final GroupArrayList list = new GroupArrayList();
+        list.setGroupItems(0, Collections.singletonList(item(-1)));
+        list.setGroupItems(1, model);
+        final GroupArrayList snapshot = new GroupArrayList(list);
+
+        // 跨越多个块的删除与插入, 以及通过可写视图修改
+        list.removeGroupItems(1, 300, 1500);
+        model.subList(300, 1800).clear();
+        final List<UnionTypeItemObject> inserted = new ArrayList<>();
+        for (int i = 0; i < 700; i++) {
+            inserted.add(item(10000 + i));
+        }
+        list.insertGroupItems(1, 1000, inserted);
+        model.addAll(1000, inserted);
+        final List<UnionTypeItemObject> groupItems = list.getGroupItems(1);
+        groupItems.set(2500, item(20000));
+        model.set(2500, groupItems.get(2500));
+        groupItems.subList(10, 20).clear();
+        model.subList(10, 20).clear();
+
+        assertEquals(model, list.getGroupItems(1));
+        assertEquals(1 + model.size(), list.size());
+        for (int i = 0; i < model.size(); i++) {
+            assertSame(model.get(i), list.getItem(1 + i));
+        }
+        assertEquals(5001, snapshot.size());
+        assertEquals(4999L, ((TestItems.Item) snapshot.getItem(5000).itemObject).mId);
+    }
+
+    @Test
+    public void positionLookup() {
+        final GroupArrayList list = new GroupArrayList();
+        list.setGroupItems(5, Arrays.asList(item(1), item(2)));
+        list.setGroupItems(2, Collections.emptyList());
+        list.setGroupItems(9, Collections.singletonList(item(3)));
+
+        final long packed = list.getGroupAndPositionPacked(2);
+        assertEquals(9, GroupArrayList.unpackGroup(packed));
+        assertEquals(0, GroupArrayList.unpackPositionInGroup(packed));
+        assertArrayEquals(new int[]{5, 1}, list.getGroupAndPosition(1));
+        assertEquals(GroupArrayList.NO_GROUP_AND_POSITION, list.getGroupAndPositionPacked(3));
+        assertEquals(GroupArrayList.NO_GROUP_AND_POSITION, list.getGroupAndPositionPacked(-1));
+        assertNull(list.getItem(3));
+        assertEquals(2, list.getGroupPositionStart(9));
+    }
+
+    private static void applyRandomOperation(Random random,
+                                             GroupArrayList list,
+                                             TreeMap<Integer, List<UnionTypeItemObject>> model) {
+        final int group = random.nextInt(8);
+        final List<UnionTypeItemObject> groupModel = model.get(group);
+        final int groupSize = groupModel == null ? 0 : groupModel.size();
+        switch (random.nextInt(9)) {
+            case 0: {
+                final List<UnionTypeItemObject> items = randomItems(random, random.nextInt(4) == 0 ? 1200 : 20);
+                list.setGroupItems(group, items);
+                model.put(group, new ArrayList<>(items));
+                break;
+            }
+            case 1: {
+                final List<UnionTypeItemObject> items = randomItems(random, 30);
+                list.appendGroupItems(group, items);
+                if (!items.isEmpty()) {
+                    model.computeIfAbsent(group, k -> new ArrayList<>()).addAll(items);
+                }
+                break;
+            }
+            case 2: {
+                final List<UnionTypeItemObject> items = randomItems(random, 30);
+                final int position = random.nextInt(groupSize + 1);
+                list.insertGroupItems(group, position, items);
+                if (!items.isEmpty()) {
+                    model.computeIfAbsent(group, k -> new ArrayList<>()).addAll(position, items);
+                }
+                break;
+            }
+            case 3: {
+                if (groupSize > 0) {
+                    final int position = random.nextInt(groupSize);
+                    final int size = 1 + random.nextInt(groupSize - position);
+                    list.removeGroupItems(group, position, size);
+                    groupModel.subList(position, position + size).clear();
+                }
+                break;
+            }
+            case 4: {
+                list.removeGroup(group);
+                model.remove(group);
+                break;
+            }
+            case 5: {
+                list.clearGroupItems(group);
+                if (groupModel != null) {
+                    groupModel.clear();
+                }
+                break;
+            }
+            case 6: {
+                final int size = list.size();
+                if (size > 0) {
+                    final int position = random.nextInt(size);
+                    final int[] groupAndPosition = list.getGroupAndPosition(position);
+                    list.removeItem(position);
+                    model.get(groupAndPosition[0]).remove(groupAndPosition[1]);
+                }
+                break;
+            }
+            case 7: {
+                // 通过可写视图修改
+                final List<UnionTypeItemObject> groupItems = list.getGroupItems(group);
+                if (groupItems != null && groupSize > 0) {
+                    final int position = random.nextInt(groupSize);
+                    final UnionTypeItemObject item = item(random.nextInt(100000));
+                    groupItems.set(position, item);
+                    groupModel.set(position, item);
+                    groupItems.add(item);
+                    groupModel.add(item);
+                }
+                break;
+            }
+            default: {
+                final List<UnionTypeItemObject> groupItems = list.getGroupItems(group);
+                if (groupItems != null && groupSize > 1) {
+                    final int from = random.nextInt(groupSize);
+                    final int to = from + random.nextInt(groupSize - from);
+                    groupItems.subList(from, to).clear();
+                    groupModel.subList(from, to).clear();
+                }
+                break;
+            }
+        }
+    }
+
+    private static void assertMatches(TreeMap<Integer, List<UnionTypeItemObject>> model, GroupArrayList list) {
+        final List<UnionTypeItemObject> expected = new ArrayList<>();
+        for (Map.Entry<Integer, List<UnionTypeItemObject>> entry : model.entrySet()) {
+            final int group = entry.getKey();
+            final List<UnionTypeItemObject> groupModel = entry.getValue();
+            assertEquals(expected.size(), list.getGroupPositionStart(group));
+            assertEquals(groupModel.size(), list.getGroupItemsSize(group));
+            assertEquals(groupModel, list.peekGroupItems(group));
+            for (int i = 0; i < groupModel.size(); i++) {
+                assertSame(groupModel.get(i), list.getGroupItem(group, i));
+                final long packed = list.getGroupAndPositionPacked(expected.size() + i);
+                assertEquals(group, GroupArrayList.unpackGroup(packed));
+                assertEquals(i, GroupArrayList.unpackPositionInGroup(packed));
+            }
+            expected.addAll(groupModel);
+        }
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), list.getItem(i));
+        }
+        assertNull(list.getItem(expected.size()));
+        assertEquals(expected, list.toList());
+    }
+
+    private static TreeMap<Integer, List<UnionTypeItemObject>> copyOf(TreeMap<Integer, List<UnionTypeItemObject>> model) {
+        final TreeMap<Integer, List<UnionTypeItemObject>> copy = new TreeMap<>();
+        for (Map.Entry<Integer, List<UnionTypeItemObject>> entry : model.entrySet()) {
+            copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static List<UnionTypeItemObject> randomItems(Random random, int maxSize) {
+        final int size = random.nextInt(maxSize + 1);
+        final List<UnionTypeItemObject> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(item(random.nextInt(100000)));
+        }
+        return items;
+    }
+
+}
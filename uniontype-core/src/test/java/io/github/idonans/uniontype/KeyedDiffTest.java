@@ -0,0 +1,135 @@
+package io.github.idonans.uniontype;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static io.github.idonans.uniontype.TestItems.item;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedDiffTest {
+
+    @Test
+    public void randomizedDiffTransformsOldIntoNew() {
+        final Random random = new Random(7);
+        for (int round = 0; round < 300; round++) {
+            final List<UnionTypeItemObject> oldItems = randomItems(random, 0);
+            final List<UnionTypeItemObject> newItems = mutate(random, oldItems);
+            for (boolean detectMoves : new boolean[]{true, false}) {
+                final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(oldItems);
+                assertTrue(KeyedDiff.calculateDiff(oldItems, newItems, detectMoves, applier));
+                applier.assertMatches(newItems);
+                if (detectMoves) {
+                    // 所有保留下来的数据都通过移动复用, 只插入新出现的数据
+                    assertEquals(countNewKeys(oldItems, newItems), applier.mInsertedCount);
+                } else {
+                    assertEquals(0, applier.mMovedCount);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unchangedItemsProduceNoUpdates() {
+        final List<UnionTypeItemObject> oldItems = Arrays.asList(item(1), item(2), item(3));
+        final List<UnionTypeItemObject> newItems = Arrays.asList(item(1), item(2), item(3));
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(oldItems);
+        assertTrue(KeyedDiff.calculateDiff(oldItems, newItems, true, applier));
+        assertEquals(0, applier.mInsertedCount + applier.mRemovedCount + applier.mMovedCount);
+        applier.assertMatches(newItems);
+    }
+
+    @Test
+    public void sameIdWithDifferentUnionTypeIsDifferentItem() {
+        final List<UnionTypeItemObject> oldItems = Collections.singletonList(item(1, 5, 0));
+        final List<UnionTypeItemObject> newItems = Collections.singletonList(item(2, 5, 0));
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(oldItems);
+        assertTrue(KeyedDiff.calculateDiff(oldItems, newItems, true, applier));
+        assertEquals(1, applier.mRemovedCount);
+        assertEquals(1, applier.mInsertedCount);
+        applier.assertMatches(newItems);
+    }
+
+    @Test
+    public void itemWithoutStableIdIsRejected() {
+        final List<UnionTypeItemObject> oldItems = Arrays.asList(item(1), TestItems.anonymousItem());
+        final List<UnionTypeItemObject> newItems = Collections.singletonList(item(1));
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(oldItems);
+        assertFalse(KeyedDiff.calculateDiff(oldItems, newItems, true, applier));
+        assertEquals(0, applier.mInsertedCount + applier.mRemovedCount + applier.mMovedCount);
+    }
+
+    @Test
+    public void duplicateStableIdIsRejected() {
+        final List<UnionTypeItemObject> oldItems = Collections.singletonList(item(1));
+        final List<UnionTypeItemObject> newItems = Arrays.asList(item(1), item(1));
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(oldItems);
+        assertFalse(KeyedDiff.calculateDiff(oldItems, newItems, true, applier));
+        assertEquals(0, applier.mInsertedCount + applier.mRemovedCount + applier.mMovedCount);
+    }
+
+    /**
+     * 不同 unionType 下的 id 可以重复
+     */
+    static List<UnionTypeItemObject> randomItems(Random random, long idOffset) {
+        final int size = random.nextInt(40);
+        final List<UnionTypeItemObject> items = new ArrayList<>(size);
+        final Set<Long> ids = new HashSet<>();
+        while (items.size() < size) {
+            final long id = idOffset + random.nextInt(100);
+            if (ids.add(id)) {
+                items.add(item(random.nextInt(2), id, random.nextInt(3)));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 删除, 打乱, 修改内容并插入新的数据
+     */
+    static List<UnionTypeItemObject> mutate(Random random, List<UnionTypeItemObject> oldItems) {
+        final List<UnionTypeItemObject> newItems = new ArrayList<>();
+        for (UnionTypeItemObject oldItem : oldItems) {
+            if (random.nextInt(4) == 0) {
+                continue;
+            }
+            final TestItems.Item itemObject = (TestItems.Item) oldItem.itemObject;
+            final int content = random.nextInt(4) == 0 ? itemObject.mContent + 1 : itemObject.mContent;
+            newItems.add(item(oldItem.unionType, itemObject.mId, content));
+        }
+        if (random.nextBoolean()) {
+            Collections.shuffle(newItems, random);
+        } else if (newItems.size() > 1) {
+            final int from = random.nextInt(newItems.size());
+            newItems.add(random.nextInt(newItems.size()), newItems.remove(from));
+        }
+        final int insertCount = random.nextInt(5);
+        for (int i = 0; i < insertCount; i++) {
+            newItems.add(random.nextInt(newItems.size() + 1), item(random.nextInt(2), 1000 + i, 0));
+        }
+        return newItems;
+    }
+
+    private static int countNewKeys(List<UnionTypeItemObject> oldItems, List<UnionTypeItemObject> newItems) {
+        final Set<Long> oldKeys = new HashSet<>();
+        for (UnionTypeItemObject item : oldItems) {
+            oldKeys.add(item.getItemId());
+        }
+        int count = 0;
+        for (UnionTypeItemObject item : newItems) {
+            if (!oldKeys.contains(item.getItemId())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,137 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 测试中使用的数据, 以及按顺序应用 {@link ListUpdateListener} 收到的变化
+ */
+final class TestItems {
+
+    private TestItems() {
+    }
+
+    @NonNull
+    static UnionTypeItemObject item(int unionType, long id, int content) {
+        return new UnionTypeItemObject(unionType, new Item(id, content));
+    }
+
+    @NonNull
+    static UnionTypeItemObject item(long id) {
+        return item(1, id, 0);
+    }
+
+    /**
+     * 没有实现 {@link StableId} 的数据
+     */
+    @NonNull
+    static UnionTypeItemObject anonymousItem() {
+        return new UnionTypeItemObject(1, new Object());
+    }
+
+    static final class Item implements StableId, DeepDiff {
+
+        final long mId;
+        final int mContent;
+
+        Item(long id, int content) {
+            mId = id;
+            mContent = content;
+        }
+
+        @Override
+        public long getStableId() {
+            return mId;
+        }
+
+        @Override
+        public boolean isSameItem(@Nullable Object other) {
+            return other instanceof Item && ((Item) other).mId == mId;
+        }
+
+        @Override
+        public boolean isSameContent(@Nullable Object other) {
+            return other instanceof Item && ((Item) other).mId == mId && ((Item) other).mContent == mContent;
+        }
+
+        @Override
+        public String toString() {
+            return mId + ":" + mContent;
+        }
+    }
+
+    /**
+     * 在旧数据上依次应用收到的变化. 插入的位置与内容变化的位置分别记录为标记,
+     * 其余位置保留原来的数据, 最后通过 {@link #assertMatches(List)} 与新数据比较.
+     */
+    static final class ListUpdateApplier implements ListUpdateListener {
+
+        private static final Object INSERTED = new Object();
+        private static final Object CHANGED = new Object();
+
+        @NonNull
+        private final List<Object> mEntries;
+        int mInsertedCount;
+        int mRemovedCount;
+        int mMovedCount;
+
+        ListUpdateApplier(@NonNull List<UnionTypeItemObject> oldItems) {
+            mEntries = new ArrayList<>(oldItems);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            assertTrue(position >= 0 && position <= mEntries.size());
+            for (int i = 0; i < count; i++) {
+                mEntries.add(position, INSERTED);
+            }
+            mInsertedCount += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            assertTrue(position >= 0 && position + count <= mEntries.size());
+            mEntries.subList(position, position + count).clear();
+            mRemovedCount += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mEntries.add(toPosition, mEntries.remove(fromPosition));
+            mMovedCount++;
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            assertTrue(position >= 0 && position + count <= mEntries.size());
+            for (int i = position; i < position + count; i++) {
+                if (mEntries.get(i) != INSERTED) {
+                    mEntries.set(i, CHANGED);
+                }
+            }
+        }
+
+        /**
+         * 数据量与 newItems 一致, 并且没有被标记的位置上的旧数据与新数据是同一条数据且内容相同
+         */
+        void assertMatches(@NonNull List<UnionTypeItemObject> newItems) {
+            assertEquals(newItems.size(), mEntries.size());
+            for (int i = 0; i < newItems.size(); i++) {
+                final Object entry = mEntries.get(i);
+                if (entry == INSERTED || entry == CHANGED) {
+                    continue;
+                }
+                final UnionTypeItemObject oldItem = (UnionTypeItemObject) entry;
+                assertTrue("position " + i, oldItem.isSameItem(newItems.get(i)));
+                assertTrue("position " + i, oldItem.isSameContent(newItems.get(i)));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,363 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static io.github.idonans.uniontype.TestItems.item;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransactionPipelineTest {
+
+    /**
+     * 手动执行的任务队列, 用作 workerExecutor 与 MainThreadDispatcher
+     */
+    private static class TaskList implements Executor, TransactionPipeline.MainThreadDispatcher {
+
+        private final List<Runnable> mTasks = new ArrayList<>();
+        private final List<Runnable> mDelayedTasks = new ArrayList<>();
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mTasks.add(command);
+        }
+
+        @Override
+        public void post(@NonNull Runnable runnable) {
+            mTasks.add(runnable);
+        }
+
+        @Override
+        public void postDelayed(@NonNull Runnable runnable, long delayMillis) {
+            mDelayedTasks.add(runnable);
+        }
+
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.remove(0).run();
+            }
+        }
+
+        void runDelayed() {
+            final List<Runnable> delayedTasks = new ArrayList<>(mDelayedTasks);
+            mDelayedTasks.clear();
+            for (Runnable runnable : delayedTasks) {
+                runnable.run();
+            }
+        }
+    }
+
+    private static final TransactionPipeline.MainThreadDispatcher DIRECT_DISPATCHER = new TransactionPipeline.MainThreadDispatcher() {
+        @Override
+        public void post(@NonNull Runnable runnable) {
+            runnable.run();
+        }
+
+        @Override
+        public void postDelayed(@NonNull Runnable runnable, long delayMillis) {
+            throw new AssertionError("unexpected delayed task");
+        }
+    };
+
+    @Test
+    public void rangeActionsDispatchExactUpdates() {
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(Collections.emptyList());
+        final TransactionPipeline pipeline = new TransactionPipeline(applier, Runnable::run, DIRECT_DISPATCHER, failingDiffer());
+        final List<String> events = new ArrayList<>();
+
+        pipeline.beginTransaction()
+                .setGroupItems(1, Arrays.asList(item(1), item(2)))
+                .appendGroupItems(2, Collections.singletonList(item(3)))
+                .commit(() -> events.add("start"), () -> events.add("end " + pipeline.getReadOnly().size()));
+        pipeline.beginTransaction()
+                .insertGroupItems(0, 0, Collections.singletonList(item(0)))
+                .removeGroupItems(1, 1, 1)
+                .replaceGroupItems(2, 0, Collections.singletonList(item(4, 5, 0)))
+                .commit();
+
+        assertEquals(Arrays.asList("start", "end 3"), events);
+        final List<UnionTypeItemObject> items = toList(pipeline.getReadOnly());
+        assertEquals(3, items.size());
+        assertEquals(0, ((TestItems.Item) items.get(0).itemObject).mId);
+        assertEquals(1, ((TestItems.Item) items.get(1).itemObject).mId);
+        assertEquals(4, items.get(2).unionType);
+        applier.assertMatches(items);
+        assertEquals(2, pipeline.getCommitStats().getBatchCount());
+    }
+
+    @Test
+    public void customActionUsesKeyedDiffOrListDiffer() {
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(Collections.emptyList());
+        final int[] listDifferCalls = new int[1];
+        final TransactionPipeline pipeline = new TransactionPipeline(applier, Runnable::run, DIRECT_DISPATCHER,
+                (oldItems, newItems, detectMoves, listUpdateListener) -> {
+                    listDifferCalls[0]++;
+                    TransactionPipeline.ListDiffer.REPLACE.calculateDiff(oldItems, newItems, detectMoves, listUpdateListener);
+                });
+        pipeline.setDiffEngine(TransactionPipeline.DIFF_ENGINE_KEYED);
+
+        pipeline.beginTransaction()
+                .add((transaction, groupArrayList) -> groupArrayList.setGroupItems(0, Arrays.asList(item(1), item(2), item(3))))
+                .commit();
+        pipeline.beginTransaction()
+                .setDetectMoves(true)
+                .add((transaction, groupArrayList) -> groupArrayList.setGroupItems(0, Arrays.asList(item(3), item(1))))
+                .commit();
+        assertEquals(0, listDifferCalls[0]);
+        assertEquals(1, applier.mMovedCount);
+        applier.assertMatches(toList(pipeline.getReadOnly()));
+
+        // 没有实现 StableId 的数据交给 ListDiffer
+        pipeline.beginTransaction()
+                .add((transaction, groupArrayList) -> groupArrayList.appendGroupItems(0, Collections.singletonList(TestItems.anonymousItem())))
+                .commit();
+        assertEquals(1, listDifferCalls[0]);
+        applier.assertMatches(toList(pipeline.getReadOnly()));
+    }
+
+    @Test
+    public void pendingCommitsAreMergedIntoOneBatch() {
+        final TaskList worker = new TaskList();
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(Collections.emptyList());
+        final TransactionPipeline pipeline = new TransactionPipeline(applier, worker, DIRECT_DISPATCHER, failingDiffer());
+
+        for (int i = 0; i < 5; i++) {
+            pipeline.beginTransaction().appendGroupItems(0, Collections.singletonList(item(i))).commit();
+        }
+        // 同时最多只有一个等待执行的任务
+        assertEquals(1, worker.mTasks.size());
+        worker.runAll();
+
+        final TransactionPipeline.CommitStats commitStats = pipeline.getCommitStats();
+        assertEquals(5, commitStats.getCommittedCount());
+        assertEquals(1, commitStats.getBatchCount());
+        assertEquals(5, commitStats.getLastBatchSize());
+        applier.assertMatches(toList(pipeline.getReadOnly()));
+    }
+
+    @Test
+    public void maxBatchSizeSplitsBatches() {
+        final TaskList worker = new TaskList();
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(Collections.emptyList());
+        final TransactionPipeline pipeline = new TransactionPipeline(applier, worker, DIRECT_DISPATCHER, failingDiffer());
+        pipeline.setCommitPolicy(new TransactionPipeline.CommitPolicy.Builder().setMaxBatchSize(2).build());
+
+        for (int i = 0; i < 5; i++) {
+            pipeline.beginTransaction().appendGroupItems(0, Collections.singletonList(item(i))).commit();
+        }
+        worker.runAll();
+
+        final TransactionPipeline.CommitStats commitStats = pipeline.getCommitStats();
+        assertEquals(3, commitStats.getBatchCount());
+        assertEquals(2, commitStats.getMaxBatchSize());
+        assertEquals(1, commitStats.getLastBatchSize());
+        assertEquals(5, pipeline.getReadOnly().size());
+        applier.assertMatches(toList(pipeline.getReadOnly()));
+    }
+
+    /**
+     * UI 线程分发之前, 后台已经基于上一批的结果计算下一批, 分发仍然按提交顺序进行
+     */
+    @Test
+    public void batchesAreComputedAheadAndDispatchedInOrder() {
+        final TaskList worker = new TaskList();
+        final TaskList main = new TaskList();
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(Collections.emptyList());
+        final TransactionPipeline pipeline = new TransactionPipeline(applier, worker, main, failingDiffer());
+        final List<Integer> dispatched = new ArrayList<>();
+
+        pipeline.beginTransaction().setGroupItems(0, Arrays.asList(item(1), item(2))).commit(() -> dispatched.add(1));
+        worker.runAll();
+        pipeline.beginTransaction().removeGroupItems(0, 0, 1).commit(() -> dispatched.add(2));
+        worker.runAll();
+
+        assertEquals(0, pipeline.getReadOnly().size());
+        assertTrue(dispatched.isEmpty());
+        main.runAll();
+
+        assertEquals(Arrays.asList(1, 2), dispatched);
+        assertEquals(1, pipeline.getReadOnly().size());
+        applier.assertMatches(toList(pipeline.getReadOnly()));
+    }
+
+    @Test
+    public void commitWindowDelaysProcessing() {
+        final TaskList worker = new TaskList();
+        final TaskList main = new TaskList();
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(Collections.emptyList());
+        final TransactionPipeline pipeline = new TransactionPipeline(applier, worker, main, failingDiffer());
+        pipeline.setCommitPolicy(new TransactionPipeline.CommitPolicy.Builder().setWindowMs(16).build());
+
+        pipeline.beginTransaction().appendGroupItems(0, Collections.singletonList(item(1))).commit();
+        pipeline.beginTransaction().appendGroupItems(0, Collections.singletonList(item(2))).commit();
+        assertTrue(worker.mTasks.isEmpty());
+        assertEquals(1, main.mDelayedTasks.size());
+
+        main.runDelayed();
+        worker.runAll();
+        main.runAll();
+        assertEquals(1, pipeline.getCommitStats().getBatchCount());
+        assertEquals(2, pipeline.getReadOnly().size());
+    }
+
+    @Test
+    public void mergeOverflowTakesAllPendingInOneBatch() {
+        final TaskList worker = new TaskList();
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(Collections.emptyList());
+        final TransactionPipeline pipeline = new TransactionPipeline(applier, worker, DIRECT_DISPATCHER, failingDiffer());
+        pipeline.setCommitPolicy(new TransactionPipeline.CommitPolicy.Builder()
+                .setMaxBatchSize(2)
+                .setMaxPendingSize(3, TransactionPipeline.CommitPolicy.OVERFLOW_MERGE)
+                .build());
+
+        // 没有超出 maxPendingSize 时仍然按 maxBatchSize 分批
+        for (int i = 0; i < 3; i++) {
+            pipeline.beginTransaction().appendGroupItems(0, Collections.singletonList(item(i))).commit();
+        }
+        worker.runAll();
+        assertEquals(2, pipeline.getCommitStats().getBatchCount());
+        assertEquals(2, pipeline.getCommitStats().getMaxBatchSize());
+
+        // 超出之后一次处理全部
+        for (int i = 3; i < 8; i++) {
+            pipeline.beginTransaction().appendGroupItems(0, Collections.singletonList(item(i))).commit();
+        }
+        worker.runAll();
+        final TransactionPipeline.CommitStats commitStats = pipeline.getCommitStats();
+        assertEquals(3, commitStats.getBatchCount());
+        assertEquals(5, commitStats.getLastBatchSize());
+        assertEquals(8, pipeline.getReadOnly().size());
+        applier.assertMatches(toList(pipeline.getReadOnly()));
+    }
+
+    /**
+     * 后台已经有等待执行的任务时, 合并窗口内的提交仍然等到窗口结束才处理
+     */
+    @Test
+    public void commitWindowHoldsCommitsFromRunningWorker() {
+        final TaskList worker = new TaskList();
+        final TaskList main = new TaskList();
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(Collections.emptyList());
+        final TransactionPipeline pipeline = new TransactionPipeline(applier, worker, main, failingDiffer());
+        pipeline.setCommitPolicy(new TransactionPipeline.CommitPolicy.Builder().setWindowMs(16).build());
+
+        pipeline.beginTransaction().appendGroupItems(0, Collections.singletonList(item(1))).commit();
+        main.runDelayed();
+        assertEquals(1, worker.mTasks.size());
+
+        // 第一个窗口已经结束, 后台任务还没有执行时打开第二个窗口
+        pipeline.beginTransaction().appendGroupItems(0, Collections.singletonList(item(2))).commit();
+        pipeline.beginTransaction().appendGroupItems(0, Collections.singletonList(item(3))).commit();
+        worker.runAll();
+        main.runAll();
+        assertEquals(1, pipeline.getCommitStats().getBatchCount());
+        assertEquals(1, pipeline.getReadOnly().size());
+
+        main.runDelayed();
+        worker.runAll();
+        main.runAll();
+        final TransactionPipeline.CommitStats commitStats = pipeline.getCommitStats();
+        assertEquals(2, commitStats.getBatchCount());
+        assertEquals(2, commitStats.getLastBatchSize());
+        assertEquals(3, pipeline.getReadOnly().size());
+        applier.assertMatches(toList(pipeline.getReadOnly()));
+    }
+
+    @Test
+    public void supersededSetGroupItemsIsDropped() {
+        final TaskList worker = new TaskList();
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(Collections.emptyList());
+        final TransactionPipeline pipeline = new TransactionPipeline(applier, worker, DIRECT_DISPATCHER, failingDiffer());
+        pipeline.setCommitPolicy(new TransactionPipeline.CommitPolicy.Builder()
+                .setMaxPendingSize(1, TransactionPipeline.CommitPolicy.OVERFLOW_DROP_OLDEST)
+                .build());
+
+        final TransactionPipeline.Transaction first = pipeline.beginTransaction().setGroupItems(0, Collections.singletonList(item(1)));
+        final TransactionPipeline.Transaction append = pipeline.beginTransaction().appendGroupItems(1, Collections.singletonList(item(2)));
+        final TransactionPipeline.Transaction second = pipeline.beginTransaction().setGroupItems(0, Collections.singletonList(item(3)));
+        final List<String> events = new ArrayList<>();
+        first.commit(() -> events.add("first " + first.isDropped()));
+        append.commit(() -> events.add("append " + append.isDropped()));
+        second.commit(() -> events.add("second " + second.isDropped()));
+        worker.runAll();
+
+        assertEquals(Arrays.asList("first true", "append false", "second false"), events);
+        assertEquals(1, pipeline.getCommitStats().getDroppedCount());
+        final List<UnionTypeItemObject> items = toList(pipeline.getReadOnly());
+        assertEquals(3, ((TestItems.Item) items.get(0).itemObject).mId);
+        assertEquals(2, ((TestItems.Item) items.get(1).itemObject).mId);
+        applier.assertMatches(items);
+    }
+
+    @Test
+    public void failedActionDoesNotBlockLaterCommits() {
+        final TaskList worker = new TaskList();
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(Collections.emptyList());
+        final TransactionPipeline pipeline = new TransactionPipeline(applier, worker, DIRECT_DISPATCHER, failingDiffer());
+
+        pipeline.beginTransaction()
+                .add((transaction, groupArrayList) -> {
+                    throw new IllegalStateException("expected");
+                })
+                .commit();
+        try {
+            worker.runAll();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        pipeline.beginTransaction().appendGroupItems(0, Collections.singletonList(item(1))).commit();
+        assertEquals(1, worker.mTasks.size());
+        worker.runAll();
+        assertEquals(1, pipeline.getReadOnly().size());
+    }
+
+    @Test
+    public void readOnlyLookups() {
+        final TransactionPipeline pipeline = new TransactionPipeline(
+                new TestItems.ListUpdateApplier(Collections.emptyList()), Runnable::run, DIRECT_DISPATCHER, failingDiffer());
+        final UnionTypeItemObject anonymous = TestItems.anonymousItem();
+        pipeline.beginTransaction()
+                .setGroupItems(3, Arrays.asList(item(7, 1, 0), anonymous))
+                .setGroupItems(5, Collections.singletonList(item(2)))
+                .commit();
+
+        final TransactionPipeline.ReadOnly readOnly = pipeline.getReadOnly();
+        assertEquals(7, readOnly.getUnionType(0));
+        assertEquals(UnionTypeItemObject.UNION_TYPE_NULL, readOnly.getUnionType(3));
+        assertEquals(item(7, 1, 0).getItemId(), readOnly.getItemId(0));
+        assertEquals(UnionTypeItemObject.NO_ID, readOnly.getItemId(1));
+        assertSame(anonymous, readOnly.getGroupItem(3, 1));
+        assertEquals(2, readOnly.getGroupPositionStart(5));
+        assertEquals(GroupArrayList.NO_GROUP_AND_POSITION, readOnly.getGroupAndPositionPacked(3));
+    }
+
+    /**
+     * 只包含内置 action 时不会计算 diff
+     */
+    @NonNull
+    private static TransactionPipeline.ListDiffer failingDiffer() {
+        return (oldItems, newItems, detectMoves, listUpdateListener) -> {
+            throw new AssertionError("unexpected diff");
+        };
+    }
+
+    @NonNull
+    private static List<UnionTypeItemObject> toList(@NonNull TransactionPipeline.ReadOnly readOnly) {
+        final List<UnionTypeItemObject> items = new ArrayList<>();
+        for (int i = 0; i < readOnly.size(); i++) {
+            items.add(readOnly.getItem(i));
+        }
+        return items;
+    }
+
+}
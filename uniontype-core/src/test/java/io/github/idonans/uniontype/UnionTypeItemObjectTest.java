@@ -0,0 +1,43 @@
+package io.github.idonans.uniontype;
+
+import org.junit.Test;
+
+import static io.github.idonans.uniontype.TestItems.item;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class UnionTypeItemObjectTest {
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    @Test
+    public void itemWithStableIdNeverHasNoId() {
+        assertNotEquals(UnionTypeItemObject.NO_ID, item(-1, 0, 0).getItemId());
+
+        // 每个 unionType 下使 stableId * GOLDEN + unionType == -1 的 stableId
+        final long inverse = inverse(GOLDEN);
+        for (int unionType = -3; unionType <= 3; unionType++) {
+            final long stableId = (-1L - unionType) * inverse;
+            assertEquals(-1L, stableId * GOLDEN + unionType);
+            assertNotEquals(UnionTypeItemObject.NO_ID, item(unionType, stableId, 0).getItemId());
+        }
+    }
+
+    @Test
+    public void itemWithoutStableIdHasNoId() {
+        assertEquals(UnionTypeItemObject.NO_ID, TestItems.anonymousItem().getItemId());
+        assertEquals(UnionTypeItemObject.NO_ID, new UnionTypeItemObject(1, null).getItemId());
+    }
+
+    /**
+     * 奇数在模 2^64 下的乘法逆元 (牛顿迭代)
+     */
+    private static long inverse(long odd) {
+        long inverse = odd;
+        for (int i = 0; i < 5; i++) {
+            inverse *= 2 - odd * inverse;
+        }
+        return inverse;
+    }
+
+}
@@ -0,0 +1,181 @@
+package io.github.idonans.uniontype;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static io.github.idonans.uniontype.TestItems.item;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UpdateScriptTest {
+
+    @Test
+    public void diffGroupTransformsOldIntoNew() {
+        final Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            final List<UnionTypeItemObject> oldItems = KeyedDiffTest.randomItems(random, 0);
+            final List<UnionTypeItemObject> newItems = KeyedDiffTest.mutate(random, oldItems);
+            final UpdateScript updateScript = new UpdateScript.Builder().diffGroup(3, oldItems, newItems).build();
+
+            assertArrayEquals(new int[]{3}, updateScript.getGroups());
+            assertEquals(oldItems.size(), updateScript.getOldSize(3));
+            assertEquals(newItems.size(), updateScript.getNewSize(3));
+            assertTrue(updateScript.matchesGroup(3, oldItems, newItems));
+
+            final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(oldItems);
+            updateScript.dispatchGroupUpdatesTo(3, 0, applier);
+            applier.assertMatches(newItems);
+        }
+    }
+
+    @Test
+    public void diffGroupFallsBackToReplaceWithoutStableId() {
+        final List<UnionTypeItemObject> oldItems = Arrays.asList(item(1), TestItems.anonymousItem());
+        final List<UnionTypeItemObject> newItems = Collections.singletonList(item(1));
+        final UpdateScript updateScript = new UpdateScript.Builder().diffGroup(0, oldItems, newItems).build();
+
+        final TestItems.ListUpdateApplier applier = new TestItems.ListUpdateApplier(oldItems);
+        updateScript.dispatchGroupUpdatesTo(0, 0, applier);
+        assertEquals(2, applier.mRemovedCount);
+        assertEquals(1, applier.mInsertedCount);
+        applier.assertMatches(newItems);
+    }
+
+    @Test
+    public void intArrayRoundTrip() {
+        final UpdateScript updateScript = new UpdateScript.Builder()
+                .diffGroup(2, Arrays.asList(item(1), item(2), item(3)), Arrays.asList(item(3), item(1), item(4)))
+                .diffGroup(1, Collections.emptyList(), Collections.singletonList(item(9)))
+                .build();
+        final int[] data = updateScript.toIntArray();
+        final UpdateScript copy = UpdateScript.fromIntArray(data);
+
+        assertArrayEquals(data, copy.toIntArray());
+        assertArrayEquals(new int[]{1, 2}, copy.getGroups());
+        assertTrue(copy.matchesGroup(2, Arrays.asList(item(1), item(2), item(3)), Arrays.asList(item(3), item(1), item(4))));
+    }
+
+    @Test
+    public void fingerprintMismatchIsDetected() {
+        final List<UnionTypeItemObject> oldItems = Arrays.asList(item(1), item(2));
+        final List<UnionTypeItemObject> newItems = Arrays.asList(item(2), item(1));
+        final UpdateScript updateScript = new UpdateScript.Builder().diffGroup(0, oldItems, newItems).build();
+
+        // 数据量相同但内容不同
+        assertFalse(updateScript.matchesGroup(0, Arrays.asList(item(1), item(3)), newItems));
+        assertFalse(updateScript.matchesGroup(0, oldItems, Arrays.asList(item(1), item(2))));
+        // 数据量不同
+        assertFalse(updateScript.matchesGroup(0, Collections.singletonList(item(1)), newItems));
+        // 没有记录的分组
+        assertFalse(updateScript.matchesGroup(1, oldItems, newItems));
+
+        assertNotEquals(UpdateScript.fingerprint(oldItems), UpdateScript.fingerprint(newItems));
+        assertEquals(UpdateScript.fingerprint(oldItems), UpdateScript.fingerprint(Arrays.asList(item(1), item(2))));
+    }
+
+    @Test
+    public void scriptWithoutFingerprintChecksSizeOnly() {
+        final UpdateScript.Builder builder = new UpdateScript.Builder();
+        final UpdateScript.GroupBuilder groupBuilder = builder.beginGroup(0, 2);
+        groupBuilder.onInserted(2, 1);
+        groupBuilder.end(3);
+        final UpdateScript updateScript = builder.build();
+
+        assertTrue(updateScript.matchesGroup(0, Arrays.asList(item(1), item(2)), Arrays.asList(item(1), item(2), item(3))));
+        assertTrue(updateScript.matchesGroup(0, Arrays.asList(item(5), item(6)), Arrays.asList(item(7), item(8), item(9))));
+        assertFalse(updateScript.matchesGroup(0, Collections.singletonList(item(1)), Arrays.asList(item(1), item(2), item(3))));
+    }
+
+    @Test
+    public void version1FormatIsReadable() {
+        // [version, groupCount, group, oldSize, newSize, opCount, (type, first, second) * opCount]
+        final int[] data = {1, 1, 4, 2, 3, 1, UpdateScript.OP_INSERT, 0, 1};
+        final UpdateScript updateScript = UpdateScript.fromIntArray(data);
+
+        assertEquals(2, updateScript.getOldSize(4));
+        assertEquals(3, updateScript.getNewSize(4));
+        assertTrue(updateScript.matchesGroup(4, Arrays.asList(item(1), item(2)), Arrays.asList(item(0), item(1), item(2))));
+    }
+
+    @Test
+    public void malformedDataIsRejected() {
+        final int[] valid = new UpdateScript.Builder()
+                .diffGroup(0, Arrays.asList(item(1), item(2)), Collections.singletonList(item(2)))
+                .build()
+                .toIntArray();
+
+        assertRejected(new int[]{99, 0});
+        assertRejected(Arrays.copyOf(valid, valid.length - 1));
+        assertRejected(Arrays.copyOf(valid, valid.length + 1));
+
+        // 操作超出数据量范围
+        final int[] outOfRange = valid.clone();
+        outOfRange[outOfRange.length - 2] = 5;
+        assertRejected(outOfRange);
+
+        // 重复的分组
+        final int[] duplicate = {1, 2, 0, 0, 0, 0, 0, 0, 0, 0};
+        assertRejected(duplicate);
+    }
+
+    @Test
+    public void javaSerializationRoundTrip() throws Exception {
+        final UpdateScript updateScript = new UpdateScript.Builder()
+                .diffGroup(0, Arrays.asList(item(1), item(2), item(3)), Arrays.asList(item(3), item(2)))
+                .build();
+        final UpdateScript copy = (UpdateScript) deserialize(serialize(updateScript));
+        assertArrayEquals(updateScript.toIntArray(), copy.toIntArray());
+    }
+
+    @Test
+    public void tamperedSerializedDataIsRejected() throws Exception {
+        final UpdateScript updateScript = new UpdateScript.Builder()
+                .diffGroup(0, Collections.singletonList(item(1)), Arrays.asList(item(1), item(2)))
+                .build();
+        final byte[] bytes = serialize(updateScript);
+        // 序列化数据的末尾是 int 数组的最后一个元素, 即最后一个操作的 second (插入的数量)
+        bytes[bytes.length - 1] = 9;
+        try {
+            deserialize(bytes);
+            fail();
+        } catch (InvalidObjectException expected) {
+        }
+    }
+
+    private static void assertRejected(int[] data) {
+        try {
+            UpdateScript.fromIntArray(data);
+            fail(Arrays.toString(data));
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+}
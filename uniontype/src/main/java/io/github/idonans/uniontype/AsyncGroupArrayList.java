@@ -1,249 +1,308 @@
 package io.github.idonans.uniontype;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
 import androidx.recyclerview.widget.AdapterListUpdateCallback;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.Objects;
 
 import io.github.idonans.core.thread.TaskQueue;
-import io.github.idonans.core.thread.Threads;
-import io.github.idonans.core.util.Preconditions;
-
-public class AsyncGroupArrayList {
-
-    private final ListUpdateCallback mListUpdateCallback;
 
-    @NonNull
-    private GroupArrayList mGroupArrayListOrigin;
-    @NonNull
-    private ReadOnly mReadOnly;
-
-    @NonNull
-    private final Object mTransactionListLock = new Object();
-    @NonNull
-    private List<Transaction> mTransactionList = new ArrayList<>();
-    private final TaskQueue mTransactionActionQueue = new TaskQueue(1);
+/**
+ * {@link TransactionPipeline} 在 Android 上的实现: 在 {@link TaskQueue} 上计算, 通过主线程的 {@link Handler} 分发,
+ * 使用 {@link DiffUtil} 计算 diff, 并且可以将分发对齐到帧开始时或者推迟到惯性滑动结束之后.
+ */
+public class AsyncGroupArrayList extends TransactionPipeline {
+
+    /**
+     * 使用 {@link DiffUtil} 计算 diff (Myers 算法)
+     */
+    private static final ListDiffer DIFF_UTIL_DIFFER = (oldItems, newItems, detectMoves, listUpdateListener) -> {
+        final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new UnionTypeItemDiffCallback(
+                new ItemsSnapshot(oldItems), new ItemsSnapshot(newItems)), detectMoves);
+        diffResult.dispatchUpdatesTo(new ListUpdateListenerCallback(listUpdateListener));
+    };
+
+    private boolean mFrameAlignedDispatch;
+    private boolean mDispatchFrameCallbackPosted;
+    @Nullable
+    private RecyclerView mDeferDispatchRecyclerView;
+    private final Choreographer.FrameCallback mDispatchFrameCallback = frameTimeNanos -> {
+        mDispatchFrameCallbackPosted = false;
+        if (!isDeferDispatch()) {
+            drainPendingDispatch();
+        }
+    };
+    private final RecyclerView.OnScrollListener mDeferDispatchScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+            if (newState != RecyclerView.SCROLL_STATE_SETTLING) {
+                scheduleDispatch();
+            }
+        }
+    };
 
     public AsyncGroupArrayList(@NonNull RecyclerView.Adapter<?> adapter) {
         this(new AdapterListUpdateCallback(adapter));
     }
 
     public AsyncGroupArrayList(@NonNull final ListUpdateCallback listUpdateCallback) {
-        mListUpdateCallback = listUpdateCallback;
-        mGroupArrayListOrigin = new GroupArrayList();
-        mReadOnly = new ReadOnly(mGroupArrayListOrigin);
+        super(new ListUpdateCallbackListener(listUpdateCallback),
+                new TaskQueue(1)::enqueue,
+                new MainLooperDispatcher(),
+                DIFF_UTIL_DIFFER);
     }
 
-    @NonNull
-    public ReadOnly getReadOnly() {
-        return mReadOnly;
+    /**
+     * 是否将数据的切换与变化的分发对齐到下一帧开始时 ({@link Choreographer.FrameCallback}),
+     * 避免在一帧的中途分发大量变化触发 layout 而导致掉帧. 默认 false, 计算完成后立即分发.
+     */
+    @UiThread
+    public void setFrameAlignedDispatch(boolean frameAlignedDispatch) {
+        mFrameAlignedDispatch = frameAlignedDispatch;
+        scheduleDispatch();
     }
 
-    @NonNull
-    public Transaction beginTransaction() {
-        return new Transaction(this);
+    /**
+     * 设置之后, 在该 RecyclerView 处于惯性滑动 ({@link RecyclerView#SCROLL_STATE_SETTLING}) 时暂缓分发,
+     * 滑动停止或者被拖动时再按顺序分发. 设置为 null 时取消.
+     */
+    @UiThread
+    public void setDeferDispatchWhileSettling(@Nullable RecyclerView recyclerView) {
+        if (mDeferDispatchRecyclerView == recyclerView) {
+            return;
+        }
+        if (mDeferDispatchRecyclerView != null) {
+            mDeferDispatchRecyclerView.removeOnScrollListener(mDeferDispatchScrollListener);
+        }
+        mDeferDispatchRecyclerView = recyclerView;
+        if (mDeferDispatchRecyclerView != null) {
+            mDeferDispatchRecyclerView.addOnScrollListener(mDeferDispatchScrollListener);
+        }
+        scheduleDispatch();
     }
 
-    private void commit(@NonNull Transaction transaction) {
-        synchronized (mTransactionListLock) {
-            mTransactionList.add(transaction);
+    @UiThread
+    @Override
+    protected void scheduleDispatch() {
+        if (!hasPendingDispatch()) {
+            return;
+        }
+
+        if (isDeferDispatch()) {
+            // 等待滑动状态变化时再分发
+            return;
         }
 
-        if (mTransactionActionQueue.getCurrentCount() > 3) {
+        if (mFrameAlignedDispatch) {
+            if (!mDispatchFrameCallbackPosted) {
+                mDispatchFrameCallbackPosted = true;
+                Choreographer.getInstance().postFrameCallback(mDispatchFrameCallback);
+            }
             return;
         }
 
-        mTransactionActionQueue.skipQueue();
-        mTransactionActionQueue.enqueue(new TransactionAction());
+        drainPendingDispatch();
     }
 
-    private class TransactionAction implements Runnable {
-        @Override
-        public void run() {
-            final List<Transaction> transactionList;
-            synchronized (mTransactionListLock) {
-                transactionList = mTransactionList;
-                mTransactionList = new ArrayList<>();
-            }
-            if (transactionList.isEmpty()) {
-                return;
-            }
+    @UiThread
+    private boolean isDeferDispatch() {
+        return mDeferDispatchRecyclerView != null
+                && mDeferDispatchRecyclerView.getScrollState() == RecyclerView.SCROLL_STATE_SETTLING;
+    }
 
-            boolean detectMoves = false;
-            boolean forbiddenMoves = false;
-            final GroupArrayList oldList = mGroupArrayListOrigin;
-            final GroupArrayList newList = new GroupArrayList(oldList);
-            for (Transaction transaction : transactionList) {
-                for (Transaction.Action action : transaction.mActionList) {
-                    action.onAction(transaction, newList);
-                }
-                detectMoves |= transaction.mDetectMoves;
-                forbiddenMoves |= transaction.mForbiddenMoves;
-            }
-            final ReadOnly readOnly = new ReadOnly(newList);
+    /**
+     * diff 开始前把新旧数据各自展开为数组, 比较时只需要按下标读取,
+     * 并且先比较 unionType 与预先计算的 hash, 只有都相同时才调用 {@link UnionTypeItemObject#isSameItem(UnionTypeItemObject)}.
+     */
+    private static class UnionTypeItemDiffCallback extends DiffUtil.Callback {
 
-            // cal diff
-            final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new DiffUtil.Callback() {
-                @Override
-                public int getOldListSize() {
-                    return oldList.size();
-                }
+        @NonNull
+        private final ItemsSnapshot mOldItems;
+        @NonNull
+        private final ItemsSnapshot mNewItems;
 
-                @Override
-                public int getNewListSize() {
-                    return newList.size();
-                }
+        private UnionTypeItemDiffCallback(@NonNull ItemsSnapshot oldItems, @NonNull ItemsSnapshot newItems) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
 
-                @Override
-                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                    UnionTypeItemObject oldItemObject = oldList.getItem(oldItemPosition);
-                    UnionTypeItemObject newItemObject = newList.getItem(newItemPosition);
-                    if (oldItemObject == null || newItemObject == null) {
-                        return oldItemObject == newItemObject;
-                    }
-                    return oldItemObject.isSameItem(newItemObject);
-                }
+        @Override
+        public int getOldListSize() {
+            return mOldItems.mItems.length;
+        }
 
-                @Override
-                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                    UnionTypeItemObject oldItemObject = oldList.getItem(oldItemPosition);
-                    UnionTypeItemObject newItemObject = newList.getItem(newItemPosition);
-                    if (oldItemObject == null || newItemObject == null) {
-                        return oldItemObject == newItemObject;
-                    }
-                    return oldItemObject.isSameContent(newItemObject);
-                }
-            }, detectMoves && !forbiddenMoves);
-
-            final CountDownLatch countDownLatch = new CountDownLatch(1);
-            Threads.postUi(() -> {
-                for (Transaction transaction : transactionList) {
-                    if (transaction.mBatchCommitStartCallback != null) {
-                        transaction.mBatchCommitStartCallback.run();
-                    }
-                }
+        @Override
+        public int getNewListSize() {
+            return mNewItems.mItems.length;
+        }
 
-                mGroupArrayListOrigin = newList;
-                mReadOnly = readOnly;
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            UnionTypeItemObject oldItemObject = mOldItems.mItems[oldItemPosition];
+            UnionTypeItemObject newItemObject = mNewItems.mItems[newItemPosition];
+            if (oldItemObject == null || newItemObject == null) {
+                return oldItemObject == newItemObject;
+            }
+            if (mOldItems.mUnionTypes[oldItemPosition] != mNewItems.mUnionTypes[newItemPosition]) {
+                return false;
+            }
+            final int oldItemHash = mOldItems.mItemHashes[oldItemPosition];
+            final int newItemHash = mNewItems.mItemHashes[newItemPosition];
+            if (oldItemHash != newItemHash
+                    && oldItemHash != 0
+                    && newItemHash != 0
+                    && mOldItems.mDeepDiff[oldItemPosition] == mNewItems.mDeepDiff[newItemPosition]) {
+                return false;
+            }
+            return oldItemObject.isSameItem(newItemObject);
+        }
 
-                diffResult.dispatchUpdatesTo(mListUpdateCallback);
-                for (Transaction transaction : transactionList) {
-                    if (transaction.mBatchCommitEndCallback != null) {
-                        transaction.mBatchCommitEndCallback.run();
-                    }
-                }
-                countDownLatch.countDown();
-            });
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            UnionTypeItemObject oldItemObject = mOldItems.mItems[oldItemPosition];
+            UnionTypeItemObject newItemObject = mNewItems.mItems[newItemPosition];
+            if (oldItemObject == null || newItemObject == null) {
+                return oldItemObject == newItemObject;
+            }
+            if (mOldItems.mUnionTypes[oldItemPosition] != mNewItems.mUnionTypes[newItemPosition]) {
+                return false;
+            }
+            return oldItemObject.isSameContent(newItemObject);
+        }
 
-            try {
-                countDownLatch.await();
-            } catch (Throwable e) {
-                e.printStackTrace();
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            UnionTypeItemObject oldItemObject = mOldItems.mItems[oldItemPosition];
+            UnionTypeItemObject newItemObject = mNewItems.mItems[newItemPosition];
+            if (oldItemObject == null || newItemObject == null) {
+                return null;
             }
+            return oldItemObject.getChangePayload(newItemObject);
         }
     }
 
-    public static class Transaction {
+    /**
+     * 一次 diff 中使用的数据的展开形式
+     */
+    private static class ItemsSnapshot {
 
         @NonNull
-        private final AsyncGroupArrayList mAsyncGroupArrayList;
+        private final UnionTypeItemObject[] mItems;
         @NonNull
-        private final List<Action> mActionList = new ArrayList<>();
-        @Nullable
-        private Runnable mBatchCommitStartCallback;
-        @Nullable
-        private Runnable mBatchCommitEndCallback;
+        private final int[] mUnionTypes;
+        /**
+         * itemObject 实现了 {@link DeepDiff} 时为 {@link DeepDiff#getItemHashCode()}, 否则为 itemObject 的 hashCode
+         */
+        @NonNull
+        private final int[] mItemHashes;
+        @NonNull
+        private final boolean[] mDeepDiff;
+
+        private ItemsSnapshot(@NonNull List<UnionTypeItemObject> items) {
+            final int size = items.size();
+            mItems = items.toArray(new UnionTypeItemObject[size]);
+            mUnionTypes = new int[size];
+            mItemHashes = new int[size];
+            mDeepDiff = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                final UnionTypeItemObject item = mItems[i];
+                if (item == null) {
+                    continue;
+                }
+                mUnionTypes[i] = item.unionType;
+                if (item.itemObject instanceof DeepDiff) {
+                    mDeepDiff[i] = true;
+                    mItemHashes[i] = ((DeepDiff) item.itemObject).getItemHashCode();
+                } else {
+                    mItemHashes[i] = Objects.hashCode(item.itemObject);
+                }
+            }
+        }
+    }
 
-        private boolean mCommit;
-        private boolean mDetectMoves;
-        private boolean mForbiddenMoves;
+    private static class MainLooperDispatcher implements MainThreadDispatcher {
 
-        private Transaction(@NonNull AsyncGroupArrayList asyncGroupArrayList) {
-            mAsyncGroupArrayList = asyncGroupArrayList;
-        }
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
 
-        @NonNull
-        public Transaction setDetectMoves(boolean detectMoves) {
-            mDetectMoves = detectMoves;
-            return this;
+        @Override
+        public void post(@NonNull Runnable runnable) {
+            mHandler.post(runnable);
         }
 
-        @NonNull
-        public Transaction setForbiddenMoves(boolean forbiddenMoves) {
-            mForbiddenMoves = forbiddenMoves;
-            return this;
+        @Override
+        public void postDelayed(@NonNull Runnable runnable, long delayMillis) {
+            mHandler.postDelayed(runnable, delayMillis);
         }
+    }
+
+    private static class ListUpdateCallbackListener implements ListUpdateListener {
 
         @NonNull
-        public Transaction add(@NonNull Action action) {
-            Preconditions.checkArgument(!mCommit);
-            mActionList.add(action);
-            return this;
-        }
+        private final ListUpdateCallback mListUpdateCallback;
 
-        public void commit() {
-            this.commit(null);
+        private ListUpdateCallbackListener(@NonNull ListUpdateCallback listUpdateCallback) {
+            mListUpdateCallback = listUpdateCallback;
         }
 
-        public void commit(@Nullable Runnable batchCommitEndCallback) {
-            this.commit(null, batchCommitEndCallback);
+        @Override
+        public void onInserted(int position, int count) {
+            mListUpdateCallback.onInserted(position, count);
         }
 
-        public void commit(@Nullable Runnable batchCommitStartCallback,
-                           @Nullable Runnable batchCommitEndCallback) {
-            Preconditions.checkArgument(!mCommit);
-            mCommit = true;
-            mBatchCommitStartCallback = batchCommitStartCallback;
-            mBatchCommitEndCallback = batchCommitEndCallback;
-            mAsyncGroupArrayList.commit(this);
+        @Override
+        public void onRemoved(int position, int count) {
+            mListUpdateCallback.onRemoved(position, count);
         }
 
-        public interface Action {
-            void onAction(@NonNull Transaction transaction, @NonNull GroupArrayList groupArrayList);
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mListUpdateCallback.onMoved(fromPosition, toPosition);
         }
 
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            mListUpdateCallback.onChanged(position, count, payload);
+        }
     }
 
-    public static final class ReadOnly {
+    private static class ListUpdateListenerCallback implements ListUpdateCallback {
 
         @NonNull
-        private final GroupArrayList mGroupArrayListReadOnly;
-
-        private ReadOnly(@NonNull GroupArrayList groupArrayList) {
-            mGroupArrayListReadOnly = new GroupArrayList(groupArrayList);
-        }
-
-        public int getGroupItemsSize(int group) {
-            return mGroupArrayListReadOnly.getGroupItemsSize(group);
-        }
+        private final ListUpdateListener mListUpdateListener;
 
-        public int getGroupPositionStart(int group) {
-            return mGroupArrayListReadOnly.getGroupPositionStart(group);
+        private ListUpdateListenerCallback(@NonNull ListUpdateListener listUpdateListener) {
+            mListUpdateListener = listUpdateListener;
         }
 
-        @Nullable
-        public int[] getGroupAndPosition(int position) {
-            return mGroupArrayListReadOnly.getGroupAndPosition(position);
+        @Override
+        public void onInserted(int position, int count) {
+            mListUpdateListener.onInserted(position, count);
         }
 
-        public int size() {
-            return mGroupArrayListReadOnly.size();
+        @Override
+        public void onRemoved(int position, int count) {
+            mListUpdateListener.onRemoved(position, count);
         }
 
-        @Nullable
-        public UnionTypeItemObject getGroupItem(int group, int positionInGroup) {
-            return mGroupArrayListReadOnly.getGroupItem(group, positionInGroup);
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mListUpdateListener.onMoved(fromPosition, toPosition);
         }
 
-        @Nullable
-        public UnionTypeItemObject getItem(int position) {
-            return mGroupArrayListReadOnly.getItem(position);
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            mListUpdateListener.onChanged(position, count, payload);
         }
     }
 
@@ -28,6 +28,15 @@ public interface Host {
     @NonNull
     UnionTypeAdapter getAdapter();
 
+    /**
+     * 以当前 Host 为 baseHost 创建的嵌套列表之间共享的 RecycledViewPool,
+     * 见 {@link Factory#create(Host, RecyclerView, UnionTypeAdapter, boolean)}. 默认使用自身 RecyclerView 的 RecycledViewPool.
+     */
+    @NonNull
+    default RecyclerView.RecycledViewPool getSharedRecycledViewPool() {
+        return getRecyclerView().getRecycledViewPool();
+    }
+
     class Factory {
 
         public static Host create(@NonNull Fragment fragment,
@@ -48,6 +57,20 @@ public interface Host {
             return new HostWrapper(baseHost, recyclerView, adapter);
         }
 
+        /**
+         * @param shareRecycledViewPool 为 true 时 recyclerView 使用 baseHost 的 {@link Host#getSharedRecycledViewPool()},
+         *                              同一个 baseHost 下的多个嵌套列表 (例如横向滑动的卡片) 共享同一个 RecycledViewPool
+         */
+        public static Host create(@NonNull Host baseHost,
+                                  @NonNull RecyclerView recyclerView,
+                                  @NonNull UnionTypeAdapter adapter,
+                                  boolean shareRecycledViewPool) {
+            if (shareRecycledViewPool) {
+                recyclerView.setRecycledViewPool(baseHost.getSharedRecycledViewPool());
+            }
+            return new HostWrapper(baseHost, recyclerView, adapter);
+        }
+
     }
 
     abstract class BaseHost implements Host {
@@ -56,6 +79,8 @@ public interface Host {
         private final RecyclerView mRecyclerView;
         @NonNull
         private final UnionTypeAdapter mAdapter;
+        @Nullable
+        private RecyclerView.RecycledViewPool mSharedRecycledViewPool;
 
         protected BaseHost(@NonNull RecyclerView recyclerView, @NonNull UnionTypeAdapter adapter) {
             mRecyclerView = recyclerView;
@@ -73,6 +98,15 @@ public interface Host {
         public RecyclerView getRecyclerView() {
             return mRecyclerView;
         }
+
+        @NonNull
+        @Override
+        public RecyclerView.RecycledViewPool getSharedRecycledViewPool() {
+            if (mSharedRecycledViewPool == null) {
+                mSharedRecycledViewPool = new RecyclerView.RecycledViewPool();
+            }
+            return mSharedRecycledViewPool;
+        }
     }
 
     class FragmentHost extends BaseHost {
@@ -2,23 +2,81 @@ package io.github.idonans.uniontype;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.collection.SparseArrayCompat;
 
+/**
+ * 依次尝试多个 UnionTypeMapper, 使用第一个返回非 null 的结果.
+ * <p>
+ * 如果所有 mapper 都通过 {@link UnionTypeMapper#getDeclaredUnionTypes()} 声明了 unionType, 在创建时预先建立
+ * unionType 到 mapper 的分发表 (见 {@link UnionTypeTable}). 分发表之外依次尝试命中的 mapper 会被缓存, 并且优先于分发表,
+ * 因此分发表中的 mapper 返回 null 时 (例如 mapper 在创建之后被修改) 只会依次尝试一次, 之后直接使用缓存的 mapper.
+ * 缓存的 mapper 返回 null 时, 仍然会依次尝试所有 mapper 并更新缓存.
+ */
 public class MultiUnionTypeMapper implements UnionTypeMapper {
 
     private final UnionTypeMapper[] mMappers;
 
+    /**
+     * 所有 mapper 都声明了 unionType 时不为 null
+     */
+    @Nullable
+    private final UnionTypeTable<UnionTypeMapper> mDeclaredMappers;
+
+    /**
+     * 依次尝试时命中的 mapper, 优先于 mDeclaredMappers.
+     * {@link #map(Host, int)} 可能在后台线程上调用 (预先创建 ViewHolder), 访问时需要同步.
+     */
+    private final SparseArrayCompat<UnionTypeMapper> mResolvedMappers = new SparseArrayCompat<>();
+
     public MultiUnionTypeMapper(UnionTypeMapper... mappers) {
         mMappers = mappers;
+        mDeclaredMappers = buildDeclaredMappers(mappers);
+    }
+
+    @Nullable
+    private static UnionTypeTable<UnionTypeMapper> buildDeclaredMappers(@Nullable UnionTypeMapper[] mappers) {
+        if (mappers == null) {
+            return null;
+        }
+
+        final SparseArrayCompat<UnionTypeMapper> declaredMappers = new SparseArrayCompat<>();
+        for (UnionTypeMapper mapper : mappers) {
+            if (mapper == null) {
+                continue;
+            }
+            final int[] unionTypes = mapper.getDeclaredUnionTypes();
+            if (unionTypes == null) {
+                return null;
+            }
+            for (int unionType : unionTypes) {
+                // 与依次尝试的顺序一致, 前面的 mapper 优先
+                if (declaredMappers.indexOfKey(unionType) < 0) {
+                    declaredMappers.put(unionType, mapper);
+                }
+            }
+        }
+        return new UnionTypeTable<>(declaredMappers);
     }
 
     @Nullable
     @Override
     public UnionTypeViewHolder map(@NonNull Host host, int unionType) {
+        final UnionTypeMapper resolvedMapper = getResolvedMapper(unionType);
+        if (resolvedMapper != null) {
+            final UnionTypeViewHolder target = resolvedMapper.map(host, unionType);
+            if (target != null) {
+                return target;
+            }
+        }
+
         if (mMappers != null) {
             for (UnionTypeMapper mapper : mMappers) {
-                if (mapper != null) {
+                if (mapper != null && mapper != resolvedMapper) {
                     UnionTypeViewHolder target = mapper.map(host, unionType);
                     if (target != null) {
+                        synchronized (mResolvedMappers) {
+                            mResolvedMappers.put(unionType, mapper);
+                        }
                         return target;
                     }
                 }
@@ -27,4 +85,68 @@ public class MultiUnionTypeMapper implements UnionTypeMapper {
         return null;
     }
 
+    @Nullable
+    private UnionTypeMapper getResolvedMapper(int unionType) {
+        // 依次尝试的结果会覆盖分发表, 否则分发表中的 mapper 返回 null 时每次都会重新依次尝试
+        synchronized (mResolvedMappers) {
+            final UnionTypeMapper resolvedMapper = mResolvedMappers.get(unionType);
+            if (resolvedMapper != null) {
+                return resolvedMapper;
+            }
+        }
+        if (mDeclaredMappers != null) {
+            return mDeclaredMappers.get(unionType);
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public int[] getDeclaredUnionTypes() {
+        if (mDeclaredMappers == null || mMappers == null) {
+            return null;
+        }
+        final SparseArrayCompat<Boolean> unionTypes = new SparseArrayCompat<>();
+        for (UnionTypeMapper mapper : mMappers) {
+            if (mapper != null) {
+                final int[] declaredUnionTypes = mapper.getDeclaredUnionTypes();
+                if (declaredUnionTypes == null) {
+                    return null;
+                }
+                for (int unionType : declaredUnionTypes) {
+                    unionTypes.put(unionType, Boolean.TRUE);
+                }
+            }
+        }
+        final int size = unionTypes.size();
+        final int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = unionTypes.keyAt(i);
+        }
+        return result;
+    }
+
+    @Override
+    public void collectPreCreateCounts(@NonNull SparseArrayCompat<Integer> outCounts) {
+        if (mMappers != null) {
+            // 与 map 的顺序一致, 前面的 mapper 优先
+            for (UnionTypeMapper mapper : mMappers) {
+                if (mapper != null) {
+                    mapper.collectPreCreateCounts(outCounts);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void collectMaxRecycledViews(@NonNull SparseArrayCompat<Integer> outCounts) {
+        if (mMappers != null) {
+            for (UnionTypeMapper mapper : mMappers) {
+                if (mapper != null) {
+                    mapper.collectMaxRecycledViews(outCounts);
+                }
+            }
+        }
+    }
+
 }
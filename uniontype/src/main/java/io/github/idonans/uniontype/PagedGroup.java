@@ -0,0 +1,350 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+import androidx.collection.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.idonans.core.thread.TaskQueue;
+import io.github.idonans.core.thread.Threads;
+import io.github.idonans.core.util.Preconditions;
+
+/**
+ * 按页懒加载的分组. 分组的数据量始终等于 {@link #setTotalCount(int)} 设置的总数,
+ * 没有加载的位置使用同一个占位数据, 绑定到某个位置时在后台线程上加载该位置所在的页.
+ * <p>
+ * 最多保留 maxResidentPages 页的数据, 超出时最久没有被访问的页重新替换为占位数据. 快速滑动时经过的页在轮到加载时
+ * 如果已经距离最近绑定的页超过 maxResidentPages 页则直接跳过; 加载完成得较晚的页也不会淘汰在它发起之后被绑定过的页.
+ * 分组中每个位置仍然占用一个引用
+ * (占位数据共用同一个对象), 因此内存占用随总数线性增长, 只有加载的数据对象被限制在 maxResidentPages 页以内.
+ * <p>
+ * 页的加载与替换都通过 {@link AsyncGroupArrayList.Transaction#replaceGroupItems(int, int, List)} 提交,
+ * 直接分发精确的变化区域而不计算 diff. 组内数据按块写时复制, 每次提交只复制被替换的块以及块的列表,
+ * 开销与页的大小以及块数 (总数 / 512) 有关, 不会复制整个分组.
+ *
+ * <pre>
+ * PagedGroup pagedGroup = new PagedGroup(adapter, GROUP_MESSAGES, 50, 10, placeholder,
+ *         (position, size) -&gt; loadMessages(position, size));
+ * pagedGroup.setTotalCount(messageCount);
+ * </pre>
+ */
+public class PagedGroup {
+
+    /**
+     * 分页数据源
+     */
+    public interface DataSource {
+
+        /**
+         * 在后台线程上调用. 返回的数据量少于 size 时剩余位置保持占位数据, 多出的部分被忽略.
+         *
+         * @param positionInGroup 页的开始位置
+         * @param size            页的数据量
+         */
+        @WorkerThread
+        @NonNull
+        List<UnionTypeItemObject> loadPage(int positionInGroup, int size);
+    }
+
+    @NonNull
+    private final UnionTypeAdapter mAdapter;
+    private final int mGroup;
+    private final int mPageSize;
+    @NonNull
+    private final UnionTypeItemObject mPlaceholder;
+    @NonNull
+    private final DataSource mDataSource;
+
+    private final TaskQueue mLoadQueue = new TaskQueue(1);
+    private final int mMaxResidentPages;
+    /**
+     * 最近一次绑定的页, 在 UI 线程上写入, 在加载线程上读取以跳过已经不需要的页
+     */
+    private volatile int mLastBoundPage;
+
+    /**
+     * 以下字段只在 UI 线程上访问
+     */
+    private int mTotalCount;
+    /**
+     * 每次 {@link #setTotalCount(int)} 时递增, 之前发起的加载结果不再使用
+     */
+    private int mGeneration;
+    /**
+     * 每次绑定时递增, 用于比较页被访问的先后
+     */
+    private int mBindSequence;
+    /**
+     * 正在加载的页 -&gt; 发起加载之后最近一次被访问时的 mBindSequence. 加载的数据分发到 adapter 之后才移入 mResidentPages
+     */
+    @NonNull
+    private final Map<Integer, Integer> mLoadingPages = new HashMap<>();
+    /**
+     * 已经加载的页 -&gt; 最近一次被访问时的 mBindSequence, 按访问顺序淘汰
+     */
+    @NonNull
+    private final LruCache<Integer, Integer> mResidentPages;
+    /**
+     * 为 true 时从 mResidentPages 中移除的页不再替换为占位数据
+     */
+    private boolean mClearingResidentPages;
+
+    /**
+     * @param adapter          分组所在的 adapter, 绑定该分组的数据时通知加载
+     * @param group            分组
+     * @param pageSize         每页的数据量
+     * @param maxResidentPages 最多保留的页数, 需要大于一屏可见的页数
+     * @param placeholder      没有加载的位置显示的数据, 所有位置共用
+     * @param dataSource       数据源
+     */
+    @UiThread
+    public PagedGroup(@NonNull UnionTypeAdapter adapter,
+                      int group,
+                      @IntRange(from = 1) int pageSize,
+                      @IntRange(from = 1) int maxResidentPages,
+                      @NonNull UnionTypeItemObject placeholder,
+                      @NonNull DataSource dataSource) {
+        Preconditions.checkArgument(pageSize > 0);
+        Preconditions.checkArgument(maxResidentPages > 0);
+        mAdapter = adapter;
+        mGroup = group;
+        mPageSize = pageSize;
+        mPlaceholder = placeholder;
+        mDataSource = dataSource;
+        mMaxResidentPages = maxResidentPages;
+        mResidentPages = new LruCache<Integer, Integer>(maxResidentPages) {
+            @Override
+            protected void entryRemoved(boolean evicted, Integer page, Integer oldValue, Integer newValue) {
+                if (evicted && !mClearingResidentPages) {
+                    unloadPage(page);
+                }
+            }
+        };
+        adapter.addPagedGroup(this);
+    }
+
+    public int getGroup() {
+        return mGroup;
+    }
+
+    public int getTotalCount() {
+        return mTotalCount;
+    }
+
+    /**
+     * 设置分组的总数, 所有位置重置为占位数据, 之前加载的页全部丢弃
+     */
+    @UiThread
+    public void setTotalCount(@IntRange(from = 0) int totalCount) {
+        mGeneration++;
+        mTotalCount = totalCount;
+        mLoadingPages.clear();
+        clearResidentPages();
+
+        mAdapter.getData().beginTransaction()
+                .setGroupItems(mGroup, Collections.nCopies(totalCount, mPlaceholder))
+                .commit();
+    }
+
+    /**
+     * 重新加载所有已经加载的页, 例如数据源的内容发生变化之后
+     */
+    @UiThread
+    public void invalidate() {
+        final Set<Integer> pages = new HashSet<>(mResidentPages.snapshot().keySet());
+        mLoadingPages.clear();
+        mGeneration++;
+        // 重新加载完成之前继续显示之前的数据
+        clearResidentPages();
+        for (Integer page : pages) {
+            loadPage(page);
+        }
+    }
+
+    @UiThread
+    private void clearResidentPages() {
+        mClearingResidentPages = true;
+        try {
+            mResidentPages.evictAll();
+        } finally {
+            mClearingResidentPages = false;
+        }
+    }
+
+    /**
+     * 绑定该分组中的数据时由 {@link UnionTypeAdapter} 调用
+     */
+    @UiThread
+    void onBind(int positionInGroup) {
+        if (positionInGroup < 0 || positionInGroup >= mTotalCount) {
+            return;
+        }
+
+        final int page = positionInGroup / mPageSize;
+        mBindSequence++;
+        mLastBoundPage = page;
+        if (mResidentPages.get(page) != null) {
+            mResidentPages.put(page, mBindSequence);
+        } else {
+            loadPage(page);
+        }
+
+        // 接近页的边界时预先加载相邻的页
+        final int positionInPage = positionInGroup % mPageSize;
+        final int prefetchDistance = Math.max(1, mPageSize / 4);
+        if (positionInPage < prefetchDistance && page > 0) {
+            loadPageIfAbsent(page - 1);
+        } else if (positionInPage >= mPageSize - prefetchDistance) {
+            loadPageIfAbsent(page + 1);
+        }
+    }
+
+    @UiThread
+    private void loadPageIfAbsent(int page) {
+        if (page * (long) mPageSize >= mTotalCount) {
+            return;
+        }
+        // 不使用 get, 避免改变淘汰顺序
+        if (!mResidentPages.snapshot().containsKey(page)) {
+            loadPage(page);
+        }
+    }
+
+    @UiThread
+    private void loadPage(int page) {
+        if (mLoadingPages.put(page, mBindSequence) != null) {
+            // 已经在加载, 只更新访问顺序
+            return;
+        }
+
+        final int generation = mGeneration;
+        final int positionInGroup = page * mPageSize;
+        final int size = Math.min(mPageSize, mTotalCount - positionInGroup);
+        mLoadQueue.enqueue(() -> {
+            if (Math.abs(page - mLastBoundPage) > mMaxResidentPages) {
+                // 快速滑动时经过的页, 即使加载完成也会被立即淘汰, 不再调用数据源
+                Threads.postUi(() -> onPageSkipped(generation, page));
+                return;
+            }
+
+            List<UnionTypeItemObject> items = null;
+            try {
+                items = mDataSource.loadPage(positionInGroup, size);
+            } catch (Throwable e) {
+                UnionTypeLog.e(e, "PagedGroup fail to load page %s of group %s", page, mGroup);
+            }
+            final List<UnionTypeItemObject> pageItems = items;
+            Threads.postUi(() -> onPageLoaded(generation, page, positionInGroup, size, pageItems));
+        });
+    }
+
+    @UiThread
+    private void onPageLoaded(int generation,
+                              int page,
+                              int positionInGroup,
+                              int size,
+                              @Nullable List<UnionTypeItemObject> items) {
+        if (generation != mGeneration) {
+            return;
+        }
+        if (items == null) {
+            // 加载失败, 再次绑定到该页时重试
+            mLoadingPages.remove(page);
+            return;
+        }
+
+        final List<UnionTypeItemObject> pageItems = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            pageItems.add(i < items.size() ? items.get(i) : mPlaceholder);
+        }
+        final AsyncGroupArrayList.Transaction transaction = mAdapter.getData().beginTransaction()
+                .replaceGroupItems(mGroup, positionInGroup, pageItems);
+        transaction.commit(() -> onPageCommitted(generation, page, transaction));
+    }
+
+    @UiThread
+    private void onPageSkipped(int generation, int page) {
+        if (generation == mGeneration) {
+            // 再次绑定到该页时重新加载
+            mLoadingPages.remove(page);
+        }
+    }
+
+    /**
+     * 页的数据分发到 adapter 之后才记录为已加载, 在此之前淘汰其它页时不会把还没有生效的页替换为占位数据
+     */
+    @UiThread
+    private void onPageCommitted(int generation, int page, @NonNull AsyncGroupArrayList.Transaction transaction) {
+        if (generation != mGeneration) {
+            // 期间调用了 setTotalCount 或者 invalidate, 该页由之后的绑定重新加载
+            return;
+        }
+        final Integer requestSequence = mLoadingPages.remove(page);
+        if (transaction.isDropped()) {
+            return;
+        }
+        final int sequence = requestSequence == null ? mBindSequence : requestSequence;
+        if (mResidentPages.size() >= mMaxResidentPages && isEvictingNewerPage(sequence)) {
+            // 加载完成得太晚: 记录为已加载会淘汰在它之后被访问过的页 (通常是当前可见的页), 改为替换回占位数据
+            unloadPage(page);
+            return;
+        }
+        // 可能淘汰最久没有被访问的页
+        mResidentPages.put(page, sequence);
+    }
+
+    /**
+     * @return 最久没有被访问的页 (下一个被淘汰的页) 是否在 sequence 之后被访问过
+     */
+    @UiThread
+    private boolean isEvictingNewerPage(int sequence) {
+        final Iterator<Integer> iterator = mResidentPages.snapshot().values().iterator();
+        return iterator.hasNext() && iterator.next() > sequence;
+    }
+
+    /**
+     * 所有位置共用同一个占位数据, 开启 stable ids 时由 {@link UnionTypeAdapter#getItemId(int)} 为每个位置上的占位数据
+     * 生成不同的 id. 与 {@link UnionTypeItemObject#getItemId()} 使用不同的混合方式, 与真实数据的 id 冲突的概率可以忽略.
+     *
+     * @return 指定位置上的占位数据的 id, 不会是 {@link UnionTypeItemObject#NO_ID}
+     */
+    long getPlaceholderItemId(int positionInGroup) {
+        long id = ((long) mGroup << 32 | (positionInGroup & 0xFFFFFFFFL)) ^ 0x5DEECE66DL;
+        // splitmix64 finalizer
+        id = (id ^ (id >>> 30)) * 0xBF58476D1CE4E5B9L;
+        id = (id ^ (id >>> 27)) * 0x94D049BB133111EBL;
+        id = id ^ (id >>> 31);
+        return id == UnionTypeItemObject.NO_ID ? 0L : id;
+    }
+
+    /**
+     * @return 该数据是否为占位数据
+     */
+    boolean isPlaceholder(@Nullable UnionTypeItemObject itemObject) {
+        return itemObject == mPlaceholder;
+    }
+
+    @UiThread
+    private void unloadPage(int page) {
+        final int positionInGroup = page * mPageSize;
+        final int size = Math.min(mPageSize, mTotalCount - positionInGroup);
+        if (size <= 0) {
+            return;
+        }
+        mAdapter.getData().beginTransaction()
+                .replaceGroupItems(mGroup, positionInGroup, Collections.nCopies(size, mPlaceholder))
+                .commit();
+    }
+
+}
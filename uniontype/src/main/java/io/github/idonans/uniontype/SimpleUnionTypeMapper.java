@@ -6,20 +6,139 @@ import androidx.collection.SparseArrayCompat;
 
 public class SimpleUnionTypeMapper implements UnionTypeMapper {
 
+    /**
+     * 尚未调用 {@link #freeze()}, 通过二分查找分发
+     */
+    public static final int MODE_MUTABLE = 0;
+    /**
+     * 已调用 {@link #freeze()}, unionType 的范围紧凑, 通过数组下标直接分发
+     */
+    public static final int MODE_FROZEN_DENSE = 1;
+    /**
+     * 已调用 {@link #freeze()}, unionType 的范围稀疏, 仍然通过二分查找分发
+     */
+    public static final int MODE_FROZEN_SPARSE = 2;
+
     private final SparseArrayCompat<UnionTypeViewHolderCreator> mCreators = new SparseArrayCompat<>();
+    private final SparseArrayCompat<Integer> mPreCreateCounts = new SparseArrayCompat<>();
+    private final SparseArrayCompat<Integer> mMaxRecycledViews = new SparseArrayCompat<>();
+
+    /**
+     * 调用 {@link #freeze()} 之后不为 null
+     */
+    @Nullable
+    private volatile UnionTypeTable<UnionTypeViewHolderCreator> mFrozenCreators;
 
     public void put(int unionType, UnionTypeViewHolderCreator creator) {
+        checkNotFrozen();
         mCreators.put(unionType, creator);
     }
 
+    /**
+     * 注册完成之后调用, 之后不能再调用 {@link #put(int, UnionTypeViewHolderCreator)}.
+     * unionType 的范围紧凑时 (通常是从 0 开始连续的整数) 改为通过数组下标直接分发,
+     * 并且开始通过 {@link #getDeclaredUnionTypes()} 声明所有的 unionType.
+     *
+     * @return this, 方便在注册之后链式调用
+     * @see #getMode()
+     */
+    @NonNull
+    public SimpleUnionTypeMapper freeze() {
+        if (mFrozenCreators == null) {
+            final UnionTypeTable<UnionTypeViewHolderCreator> frozenCreators = new UnionTypeTable<>(mCreators);
+            mFrozenCreators = frozenCreators;
+            UnionTypeLog.v("SimpleUnionTypeMapper freeze %s union types, dense:%s", mCreators.size(), frozenCreators.isDense());
+        }
+        return this;
+    }
+
+    /**
+     * @return 当前的分发方式, 用于诊断. 取值为 {@link #MODE_MUTABLE}, {@link #MODE_FROZEN_DENSE}, {@link #MODE_FROZEN_SPARSE}
+     */
+    public int getMode() {
+        final UnionTypeTable<UnionTypeViewHolderCreator> frozenCreators = mFrozenCreators;
+        if (frozenCreators == null) {
+            return MODE_MUTABLE;
+        }
+        return frozenCreators.isDense() ? MODE_FROZEN_DENSE : MODE_FROZEN_SPARSE;
+    }
+
+    private void checkNotFrozen() {
+        if (mFrozenCreators != null) {
+            throw new IllegalStateException("SimpleUnionTypeMapper already frozen");
+        }
+    }
+
+    /**
+     * @param preCreateCount 在后台线程上预先创建的数量, creator 需要能够在后台线程上调用
+     * @see UnionTypeAdapter#preCreateViewHolders()
+     */
+    public void put(int unionType, UnionTypeViewHolderCreator creator, int preCreateCount) {
+        put(unionType, creator);
+        if (preCreateCount > 0) {
+            mPreCreateCounts.put(unionType, preCreateCount);
+        } else {
+            mPreCreateCounts.remove(unionType);
+        }
+    }
+
+    /**
+     * @param maxRecycledViews 该 unionType 在 RecycledViewPool 中缓存的最大数量
+     * @see UnionTypeMapper#collectMaxRecycledViews(SparseArrayCompat)
+     */
+    public void setMaxRecycledViews(int unionType, int maxRecycledViews) {
+        checkNotFrozen();
+        mMaxRecycledViews.put(unionType, maxRecycledViews);
+    }
+
     @Nullable
     @Override
     public UnionTypeViewHolder map(@NonNull Host host, int unionType) {
-        UnionTypeViewHolderCreator creator = mCreators.get(unionType);
+        final UnionTypeTable<UnionTypeViewHolderCreator> frozenCreators = mFrozenCreators;
+        UnionTypeViewHolderCreator creator = frozenCreators != null ? frozenCreators.get(unionType) : mCreators.get(unionType);
         if (creator != null) {
             return creator.create(host);
         }
         return null;
     }
 
+    /**
+     * 调用 {@link #freeze()} 之后注册的 unionType 不再变化, 才能声明给 {@link MultiUnionTypeMapper} 预先建立分发表.
+     *
+     * @return 调用 {@link #freeze()} 之前返回 null
+     */
+    @Nullable
+    @Override
+    public int[] getDeclaredUnionTypes() {
+        if (mFrozenCreators == null) {
+            return null;
+        }
+        final int size = mCreators.size();
+        final int[] unionTypes = new int[size];
+        for (int i = 0; i < size; i++) {
+            unionTypes[i] = mCreators.keyAt(i);
+        }
+        return unionTypes;
+    }
+
+    @Override
+    public void collectPreCreateCounts(@NonNull SparseArrayCompat<Integer> outCounts) {
+        putAllAbsent(mPreCreateCounts, outCounts);
+    }
+
+    @Override
+    public void collectMaxRecycledViews(@NonNull SparseArrayCompat<Integer> outCounts) {
+        putAllAbsent(mMaxRecycledViews, outCounts);
+    }
+
+    private static void putAllAbsent(@NonNull SparseArrayCompat<Integer> from, @NonNull SparseArrayCompat<Integer> to) {
+        final int size = from.size();
+        for (int i = 0; i < size; i++) {
+            final int unionType = from.keyAt(i);
+            if (to.indexOfKey(unionType) < 0) {
+                to.put(unionType, from.valueAt(i));
+            }
+        }
+    }
+
 }
@@ -5,22 +5,91 @@ import android.view.ViewGroup;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.collection.SparseArrayCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.common.base.Preconditions;
 
+import java.util.Collections;
+import java.util.List;
+
 public class UnionTypeAdapter extends RecyclerView.Adapter<UnionTypeViewHolder> {
 
     private final AsyncGroupArrayList mData = new AsyncGroupArrayList(this);
     private Host mHost;
     private UnionTypeMapper mUnionTypeMapper;
+    @Nullable
+    private UnionTypeViewHolderPool mViewHolderPool;
+    /**
+     * 按页懒加载的分组
+     */
+    private final SparseArrayCompat<PagedGroup> mPagedGroups = new SparseArrayCompat<>();
+    @NonNull
+    private final UnionTypePaging mPaging = new UnionTypePaging(this);
 
     public void setHost(@NonNull Host host) {
         mHost = host;
+        mPaging.setRecyclerView(host.getRecyclerView());
+        clearPreCreatedViewHolders();
     }
 
     public void setUnionTypeMapper(@NonNull UnionTypeMapper unionTypeMapper) {
         mUnionTypeMapper = unionTypeMapper;
+        clearPreCreatedViewHolders();
+        if (mHost != null) {
+            applyMaxRecycledViews(mHost.getRecyclerView().getRecycledViewPool());
+        }
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        applyMaxRecycledViews(recyclerView.getRecycledViewPool());
+    }
+
+    /**
+     * 按照 {@link UnionTypeMapper#collectMaxRecycledViews(SparseArrayCompat)} 声明的数量设置
+     * recycledViewPool 中每个 unionType 缓存的最大数量. 在设置 UnionTypeMapper 以及 attach 到 RecyclerView 时自动调用,
+     * 共享的 RecycledViewPool (见 {@link Host.Factory#create(Host, RecyclerView, UnionTypeAdapter, boolean)}) 会被多个 adapter 设置.
+     */
+    public void applyMaxRecycledViews(@NonNull RecyclerView.RecycledViewPool recycledViewPool) {
+        if (mUnionTypeMapper == null) {
+            return;
+        }
+        final SparseArrayCompat<Integer> maxRecycledViews = new SparseArrayCompat<>();
+        mUnionTypeMapper.collectMaxRecycledViews(maxRecycledViews);
+        final int size = maxRecycledViews.size();
+        for (int i = 0; i < size; i++) {
+            final Integer max = maxRecycledViews.valueAt(i);
+            if (max != null) {
+                recycledViewPool.setMaxRecycledViews(maxRecycledViews.keyAt(i), max);
+            }
+        }
+    }
+
+    /**
+     * 按照 {@link UnionTypeMapper#collectPreCreateCounts(SparseArrayCompat)} 声明的数量,
+     * 在后台线程上预先创建 ViewHolder. {@link #onCreateViewHolder(ViewGroup, int)} 优先使用预先创建的 ViewHolder.
+     * 需要在 {@link #setHost(Host)} 与 {@link #setUnionTypeMapper(UnionTypeMapper)} 之后调用.
+     * 预先创建的 View 不经过 Activity 上设置的 Factory (例如 AppCompat), 见 collectPreCreateCounts 中的说明.
+     */
+    public void preCreateViewHolders() {
+        Preconditions.checkNotNull(mUnionTypeMapper);
+        Preconditions.checkNotNull(mHost);
+
+        if (mViewHolderPool == null) {
+            mViewHolderPool = new UnionTypeViewHolderPool();
+        }
+        mViewHolderPool.preCreate(mHost, mUnionTypeMapper);
+    }
+
+    /**
+     * 丢弃所有预先创建的 ViewHolder
+     */
+    public void clearPreCreatedViewHolders() {
+        if (mViewHolderPool != null) {
+            mViewHolderPool.clear();
+        }
     }
 
     public Host getHost() {
@@ -37,7 +106,13 @@ public class UnionTypeAdapter extends RecyclerView.Adapter<UnionTypeViewHolder>
         Preconditions.checkNotNull(mUnionTypeMapper);
         Preconditions.checkNotNull(mHost);
 
-        UnionTypeViewHolder viewHolder = mUnionTypeMapper.map(mHost, viewType);
+        UnionTypeViewHolder viewHolder = null;
+        if (mViewHolderPool != null) {
+            viewHolder = mViewHolderPool.poll(viewType);
+        }
+        if (viewHolder == null) {
+            viewHolder = mUnionTypeMapper.map(mHost, viewType);
+        }
         if (viewHolder == null) {
             viewHolder = new NullUnionTypeViewHolder(mHost);
         }
@@ -46,20 +121,63 @@ public class UnionTypeAdapter extends RecyclerView.Adapter<UnionTypeViewHolder>
 
     @Override
     public int getItemViewType(int position) {
-        UnionTypeItemObject itemObject = getItem(position);
-        if (itemObject == null) {
-            return UnionTypeMapper.UNION_TYPE_NULL;
+        return mData.getReadOnly().getUnionType(position);
+    }
+
+    /**
+     * 调用 {@link #setHasStableIds(boolean)} 开启之后, 由数据的 unionType 与 {@link StableId} 得到 id.
+     * RecyclerView 要求每个位置的 id 都不相同, 因此开启之后所有数据都需要实现 {@link StableId}.
+     * {@link PagedGroup} 中的占位数据按所在位置生成 id, 无需实现 {@link StableId}.
+     *
+     * @throws IllegalStateException 开启之后该位置的数据没有实现 {@link StableId}
+     * @see UnionTypeItemObject#getItemId()
+     */
+    @Override
+    public long getItemId(int position) {
+        if (!hasStableIds()) {
+            return RecyclerView.NO_ID;
+        }
+        if (mPagedGroups.size() > 0) {
+            final long groupAndPosition = getGroupAndPositionPacked(position);
+            if (groupAndPosition != GroupArrayList.NO_GROUP_AND_POSITION) {
+                final PagedGroup pagedGroup = mPagedGroups.get(GroupArrayList.unpackGroup(groupAndPosition));
+                if (pagedGroup != null && pagedGroup.isPlaceholder(getItem(position))) {
+                    return pagedGroup.getPlaceholderItemId(GroupArrayList.unpackPositionInGroup(groupAndPosition));
+                }
+            }
+        }
+        final long itemId = mData.getReadOnly().getItemId(position);
+        if (itemId == RecyclerView.NO_ID) {
+            throw new IllegalStateException("stable ids enabled but item at position " + position
+                    + " is null or does not implement StableId");
         }
-        return itemObject.unionType;
+        return itemId;
     }
 
     @Override
     public void onBindViewHolder(@NonNull UnionTypeViewHolder holder, int position) {
+        onBindViewHolder(holder, position, Collections.emptyList());
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull UnionTypeViewHolder holder, int position, @NonNull List<Object> payloads) {
         UnionTypeItemObject unionTypeItemObject = getItem(position);
         if (unionTypeItemObject != null) {
-            holder.onBind(unionTypeItemObject);
+            holder.onBind(unionTypeItemObject, payloads);
+        }
+
+        if (mPagedGroups.size() > 0) {
+            final long groupAndPosition = getGroupAndPositionPacked(position);
+            if (groupAndPosition != GroupArrayList.NO_GROUP_AND_POSITION) {
+                final PagedGroup pagedGroup = mPagedGroups.get(GroupArrayList.unpackGroup(groupAndPosition));
+                if (pagedGroup != null) {
+                    pagedGroup.onBind(GroupArrayList.unpackPositionInGroup(groupAndPosition));
+                }
+            }
         }
 
+        mPaging.onBind(position, getItemCount());
+
         if (mOnLoadPrePageListener != null) {
             if (position <= mLoadPrePageOffset) {
                 mOnLoadPrePageListener.onLoadPrePage();
@@ -73,6 +191,28 @@ public class UnionTypeAdapter extends RecyclerView.Adapter<UnionTypeViewHolder>
         }
     }
 
+    /**
+     * 分页加载, 同一方向的加载在结束之前不会重复触发
+     */
+    @NonNull
+    public UnionTypePaging getPaging() {
+        return mPaging;
+    }
+
+    /**
+     * 由 {@link PagedGroup} 创建时调用, 同一个分组只保留最后一个
+     */
+    void addPagedGroup(@NonNull PagedGroup pagedGroup) {
+        mPagedGroups.put(pagedGroup.getGroup(), pagedGroup);
+    }
+
+    /**
+     * 之后绑定该分组的数据时不再加载, 分组中的数据保持不变
+     */
+    public void removePagedGroup(int group) {
+        mPagedGroups.remove(group);
+    }
+
     @NonNull
     public AsyncGroupArrayList getData() {
         return mData;
@@ -101,13 +241,20 @@ public class UnionTypeAdapter extends RecyclerView.Adapter<UnionTypeViewHolder>
         return mData.getReadOnly().getGroupAndPosition(position);
     }
 
+    /**
+     * @see GroupArrayList#getGroupAndPositionPacked(int)
+     */
+    public long getGroupAndPositionPacked(int position) {
+        return mData.getReadOnly().getGroupAndPositionPacked(position);
+    }
+
     @Nullable
     public UnionTypeItemObject getGroupItem(int group, int positionInGroup) {
         return mData.getReadOnly().getGroupItem(group, positionInGroup);
     }
 
     /**
-     * 加载上一页
+     * 加载上一页. 绑定到前 offset 个位置时每次都会回调, 需要自行去重, 推荐使用 {@link #getPaging()}.
      */
     public interface OnLoadPrePageListener {
         void onLoadPrePage();
@@ -125,7 +272,7 @@ public class UnionTypeAdapter extends RecyclerView.Adapter<UnionTypeViewHolder>
     }
 
     /**
-     * 加载下一页
+     * 加载下一页. 绑定到最后 offset 个位置时每次都会回调, 需要自行去重, 推荐使用 {@link #getPaging()}.
      */
     public interface OnLoadNextPageListener {
         void onLoadNextPage();
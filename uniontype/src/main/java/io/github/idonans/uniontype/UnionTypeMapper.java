@@ -2,6 +2,7 @@ package io.github.idonans.uniontype;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.collection.SparseArrayCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 public interface UnionTypeMapper {
@@ -11,4 +12,37 @@ public interface UnionTypeMapper {
     @Nullable
     UnionTypeViewHolder map(@NonNull Host host, int unionType);
 
+    /**
+     * 声明 {@link #map(Host, int)} 能够处理的所有 unionType, 用于 {@link MultiUnionTypeMapper} 预先建立分发表.
+     *
+     * @return 返回 null 表示无法预先确定. 默认返回 null.
+     */
+    @Nullable
+    default int[] getDeclaredUnionTypes() {
+        return null;
+    }
+
+    /**
+     * 声明需要在后台线程上预先创建的 ViewHolder 的数量, 见 {@link UnionTypeAdapter#preCreateViewHolders()}.
+     * 声明了数量的 unionType 的 {@link #map(Host, int)} 会在后台线程上调用, 创建过程中不能依赖 UI 线程. 默认不预先创建.
+     * <p>
+     * 注意: 预先创建时使用的 LayoutInflater 与 AsyncLayoutInflater 相同, 不包含 Activity 上设置的 Factory,
+     * 因此没有 AppCompat 的控件替换 (例如 TextView 不会替换为 AppCompatTextView), app:srcCompat 与 tint 等属性也不会生效.
+     * 而预先创建的 ViewHolder 用完之后仍然按常规方式同步创建, 结果是同一个 unionType 的 ViewHolder 中混有两种不同的 View 类.
+     * 只对布局中不依赖 Factory 的 unionType 声明数量.
+     *
+     * @param outCounts unionType 到数量, 已经存在的 unionType 不应当被覆盖
+     */
+    default void collectPreCreateCounts(@NonNull SparseArrayCompat<Integer> outCounts) {
+    }
+
+    /**
+     * 声明每个 unionType 在 RecycledViewPool 中缓存的最大数量, 未声明的 unionType 使用 RecyclerView 的默认值.
+     *
+     * @param outCounts unionType 到数量, 已经存在的 unionType 不应当被覆盖
+     * @see UnionTypeAdapter#applyMaxRecycledViews(RecyclerView.RecycledViewPool)
+     */
+    default void collectMaxRecycledViews(@NonNull SparseArrayCompat<Integer> outCounts) {
+    }
+
 }
@@ -0,0 +1,361 @@
+package io.github.idonans.uniontype;
+
+import android.os.SystemClock;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Collection;
+
+import io.github.idonans.core.thread.Threads;
+import io.github.idonans.core.util.Preconditions;
+
+/**
+ * UnionTypeAdapter 的分页加载, 通过 {@link UnionTypeAdapter#getPaging()} 获取.
+ * <p>
+ * 上一页 ({@link #DIRECTION_PRE}) 与下一页 ({@link #DIRECTION_NEXT}) 的处理方式完全相同:
+ * 绑定到距离列表首 (尾) 不超过预加载距离的位置时, 调用对应方向的 {@link PageSource}. 同一方向同时只有一个加载,
+ * 在 {@link Request} 结束之前不会重复调用; 加载失败后暂停自动加载, 直到调用 {@link #load(int)}.
+ * <p>
+ * 预加载距离在 {@link #setOffset(int, int)} 的基础上按滑动速度增加: 以当前速度在一次加载的平均耗时内
+ * 会滑过的数据量, 最多增加到 {@link #setMaxPrefetchOffset(int)}. 滑动速度不区分方向, 两个方向使用相同的增量.
+ *
+ * <pre>
+ * adapter.getPaging().setPageSource(UnionTypePaging.DIRECTION_NEXT, request -&gt;
+ *         loadMessages(lastId, items -&gt; request.addGroupItems(GROUP_MESSAGES, items, items.size() &gt;= PAGE_SIZE),
+ *                 error -&gt; request.fail()));
+ * </pre>
+ */
+public class UnionTypePaging {
+
+    public static final int DIRECTION_PRE = 0;
+    public static final int DIRECTION_NEXT = 1;
+
+    /**
+     * 超过该时间没有滑动时认为已经停止
+     */
+    private static final long VELOCITY_TIMEOUT_MILLIS = 100L;
+    /**
+     * 还没有完成过加载时使用的平均耗时
+     */
+    private static final float DEFAULT_LOAD_MILLIS = 300f;
+
+    /**
+     * 分页数据源
+     */
+    public interface PageSource {
+
+        /**
+         * 在 UI 线程上调用. 加载完成后需要调用 {@link Request#addGroupItems(int, Collection, boolean)},
+         * {@link Request#finish(boolean)} 或者 {@link Request#fail()} 结束本次加载, 否则该方向不会再次加载.
+         */
+        @UiThread
+        void onLoadPage(@NonNull Request request);
+    }
+
+    /**
+     * 一次加载. 只有第一次结束有效, {@link #reset()} 之后结束的也会被忽略. 可以在任意线程上结束.
+     */
+    public static final class Request {
+
+        @NonNull
+        private final UnionTypePaging mPaging;
+        private final int mDirection;
+        private final int mGeneration;
+        private final long mStartTime;
+
+        private Request(@NonNull UnionTypePaging paging, int direction, int generation) {
+            mPaging = paging;
+            mDirection = direction;
+            mGeneration = generation;
+            mStartTime = SystemClock.uptimeMillis();
+        }
+
+        /**
+         * @return {@link #DIRECTION_PRE} 或者 {@link #DIRECTION_NEXT}
+         */
+        public int getDirection() {
+            return mDirection;
+        }
+
+        /**
+         * 将加载的数据添加到指定组: 上一页插入到组首, 下一页追加到组尾. 数据分发到 adapter 之后本次加载才结束,
+         * 在此之前绑定到边界附近的位置不会重复加载. 提交被丢弃时按 {@link #fail()} 结束.
+         *
+         * @param hasMore 该方向是否还有更多数据, 为 false 时该方向不再加载
+         */
+        public void addGroupItems(int group, @Nullable Collection<UnionTypeItemObject> items, boolean hasMore) {
+            Threads.postUi(() -> {
+                if (!mPaging.isActive(this)) {
+                    // 已经结束或者已经 reset, 丢弃数据
+                    return;
+                }
+                final AsyncGroupArrayList.Transaction transaction = mPaging.mAdapter.getData().beginTransaction();
+                if (mDirection == DIRECTION_PRE) {
+                    transaction.insertGroupItems(group, 0, items);
+                } else {
+                    transaction.appendGroupItems(group, items);
+                }
+                // 被 CommitPolicy#OVERFLOW_DROP_OLDEST 丢弃时数据没有添加, 按加载失败结束, 之后可以通过 load 重试
+                transaction.commit(() -> {
+                    if (transaction.isDropped()) {
+                        mPaging.onRequestEnd(this, false, true);
+                    } else {
+                        mPaging.onRequestEnd(this, true, hasMore);
+                    }
+                });
+            });
+        }
+
+        /**
+         * 结束本次加载, 数据由调用方自行提交
+         *
+         * @param hasMore 该方向是否还有更多数据, 为 false 时该方向不再加载
+         */
+        public void finish(boolean hasMore) {
+            Threads.postUi(() -> mPaging.onRequestEnd(this, true, hasMore));
+        }
+
+        /**
+         * 加载失败, 该方向暂停自动加载, 直到调用 {@link UnionTypePaging#load(int)}
+         */
+        public void fail() {
+            Threads.postUi(() -> mPaging.onRequestEnd(this, false, true));
+        }
+    }
+
+    /**
+     * 一个方向的状态, 只在 UI 线程上访问
+     */
+    private static class Direction {
+        @Nullable
+        private PageSource mPageSource;
+        private int mOffset = 5;
+        private boolean mHasMore = true;
+        private boolean mFailed;
+        /**
+         * 正在进行的加载
+         */
+        @Nullable
+        private Request mLoading;
+    }
+
+    @NonNull
+    private final UnionTypeAdapter mAdapter;
+    @NonNull
+    private final Direction[] mDirections = {new Direction(), new Direction()};
+    private int mMaxPrefetchOffset = 30;
+    /**
+     * 每次 {@link #reset()} 时递增, 之前的 Request 不再有效
+     */
+    private int mGeneration;
+
+    /**
+     * 一次加载的平均耗时 (毫秒)
+     */
+    private float mAverageLoadMillis = DEFAULT_LOAD_MILLIS;
+
+    @Nullable
+    private RecyclerView mRecyclerView;
+    /**
+     * 平滑之后的滑动速度 (像素每毫秒)
+     */
+    private float mVelocity;
+    private long mLastScrolledTime;
+
+    private final RecyclerView.OnScrollListener mOnScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+            if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                mVelocity = 0f;
+            }
+        }
+
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            final long now = SystemClock.uptimeMillis();
+            final long duration = now - mLastScrolledTime;
+            mLastScrolledTime = now;
+            if (duration <= 0 || duration > VELOCITY_TIMEOUT_MILLIS) {
+                mVelocity = 0f;
+                return;
+            }
+            final float velocity = (float) (Math.abs(dx) + Math.abs(dy)) / duration;
+            mVelocity = mVelocity * 0.5f + velocity * 0.5f;
+        }
+    };
+
+    UnionTypePaging(@NonNull UnionTypeAdapter adapter) {
+        mAdapter = adapter;
+    }
+
+    /**
+     * 由 {@link UnionTypeAdapter#setHost(Host)} 调用, 从该 RecyclerView 获取滑动速度
+     */
+    @UiThread
+    void setRecyclerView(@Nullable RecyclerView recyclerView) {
+        if (mRecyclerView == recyclerView) {
+            return;
+        }
+        if (mRecyclerView != null) {
+            mRecyclerView.removeOnScrollListener(mOnScrollListener);
+        }
+        mRecyclerView = recyclerView;
+        mVelocity = 0f;
+        if (mRecyclerView != null) {
+            mRecyclerView.addOnScrollListener(mOnScrollListener);
+        }
+    }
+
+    /**
+     * 设置为 null 时该方向不再加载
+     */
+    @UiThread
+    public void setPageSource(int direction, @Nullable PageSource pageSource) {
+        getDirection(direction).mPageSource = pageSource;
+    }
+
+    /**
+     * 滑动停止时的预加载距离, 默认 5
+     */
+    @UiThread
+    public void setOffset(int direction, @IntRange(from = 0) int offset) {
+        getDirection(direction).mOffset = offset;
+    }
+
+    /**
+     * 按滑动速度增加之后的最大预加载距离, 默认 30
+     */
+    @UiThread
+    public void setMaxPrefetchOffset(@IntRange(from = 0) int maxPrefetchOffset) {
+        mMaxPrefetchOffset = maxPrefetchOffset;
+    }
+
+    @UiThread
+    public boolean isLoading(int direction) {
+        return getDirection(direction).mLoading != null;
+    }
+
+    @UiThread
+    public boolean hasMore(int direction) {
+        return getDirection(direction).mHasMore;
+    }
+
+    @UiThread
+    public void setHasMore(int direction, boolean hasMore) {
+        getDirection(direction).mHasMore = hasMore;
+    }
+
+    /**
+     * 立即加载该方向, 例如首次加载或者失败之后重试. 正在加载或者没有更多数据时忽略.
+     *
+     * @return 是否开始了新的加载
+     */
+    @UiThread
+    public boolean load(int direction) {
+        final Direction state = getDirection(direction);
+        state.mFailed = false;
+        if (state.mPageSource == null || state.mLoading != null || !state.mHasMore) {
+            return false;
+        }
+
+        final Request request = new Request(this, direction, mGeneration);
+        state.mLoading = request;
+        state.mPageSource.onLoadPage(request);
+        return true;
+    }
+
+    /**
+     * 丢弃正在进行的加载, 两个方向都恢复为有更多数据, 例如刷新整个列表时
+     */
+    @UiThread
+    public void reset() {
+        mGeneration++;
+        for (Direction state : mDirections) {
+            state.mLoading = null;
+            state.mHasMore = true;
+            state.mFailed = false;
+        }
+    }
+
+    /**
+     * 绑定数据时由 {@link UnionTypeAdapter} 调用
+     */
+    @UiThread
+    void onBind(int position, int itemCount) {
+        if (mDirections[DIRECTION_PRE].mPageSource == null && mDirections[DIRECTION_NEXT].mPageSource == null) {
+            return;
+        }
+
+        final int extraOffset = getExtraOffset();
+        loadIfNear(DIRECTION_PRE, position, extraOffset);
+        loadIfNear(DIRECTION_NEXT, itemCount - position - 1, extraOffset);
+    }
+
+    @UiThread
+    private void loadIfNear(int direction, int distance, int extraOffset) {
+        final Direction state = mDirections[direction];
+        if (state.mPageSource == null || state.mLoading != null || state.mFailed || !state.mHasMore) {
+            return;
+        }
+        final int offset = Math.min(state.mOffset + extraOffset, Math.max(state.mOffset, mMaxPrefetchOffset));
+        if (distance <= offset) {
+            load(direction);
+        }
+    }
+
+    /**
+     * @return 以当前速度在一次加载的平均耗时内会滑过的数据量
+     */
+    @UiThread
+    private int getExtraOffset() {
+        if (mRecyclerView == null || mVelocity <= 0f
+                || SystemClock.uptimeMillis() - mLastScrolledTime > VELOCITY_TIMEOUT_MILLIS) {
+            return 0;
+        }
+        final int childCount = mRecyclerView.getChildCount();
+        if (childCount <= 0) {
+            return 0;
+        }
+        final RecyclerView.LayoutManager layoutManager = mRecyclerView.getLayoutManager();
+        final boolean horizontal = layoutManager != null && layoutManager.canScrollHorizontally()
+                && !layoutManager.canScrollVertically();
+        final int size = horizontal ? mRecyclerView.getWidth() : mRecyclerView.getHeight();
+        final float itemExtent = (float) size / childCount;
+        if (itemExtent <= 0f) {
+            return 0;
+        }
+        return (int) Math.ceil(mVelocity * mAverageLoadMillis / itemExtent);
+    }
+
+    @UiThread
+    private boolean isActive(@NonNull Request request) {
+        return request.mGeneration == mGeneration && mDirections[request.mDirection].mLoading == request;
+    }
+
+    @UiThread
+    private void onRequestEnd(@NonNull Request request, boolean success, boolean hasMore) {
+        if (!isActive(request)) {
+            return;
+        }
+        final Direction state = mDirections[request.mDirection];
+        state.mLoading = null;
+        if (success) {
+            state.mHasMore = hasMore;
+            final long duration = SystemClock.uptimeMillis() - request.mStartTime;
+            mAverageLoadMillis = mAverageLoadMillis * 0.7f + duration * 0.3f;
+        } else {
+            state.mFailed = true;
+        }
+    }
+
+    @NonNull
+    private Direction getDirection(int direction) {
+        Preconditions.checkArgument(direction == DIRECTION_PRE || direction == DIRECTION_NEXT);
+        return mDirections[direction];
+    }
+
+}
@@ -0,0 +1,38 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.GridLayoutManager;
+
+/**
+ * 按 unionType 确定 span size 的 {@link GridLayoutManager.SpanSizeLookup}.
+ * 通过 {@link AsyncGroupArrayList.ReadOnly#getUnionType(int)} 读取当前快照中该位置数据的 unionType,
+ * 查找该位置所在的分组 (连续访问同一分组时命中缓存) 并读取数据的 unionType 字段, 不会复制或者展开整个列表.
+ *
+ * <pre>
+ * gridLayoutManager.setSpanSizeLookup(new UnionTypeSpanSizeLookup(adapter) {
+ *     protected int getSpanSizeForUnionType(int unionType) {
+ *         return unionType == UNION_TYPE_HEADER ? spanCount : 1;
+ *     }
+ * });
+ * </pre>
+ */
+public abstract class UnionTypeSpanSizeLookup extends GridLayoutManager.SpanSizeLookup {
+
+    @NonNull
+    private final UnionTypeAdapter mAdapter;
+
+    public UnionTypeSpanSizeLookup(@NonNull UnionTypeAdapter adapter) {
+        mAdapter = adapter;
+    }
+
+    @Override
+    public int getSpanSize(int position) {
+        return getSpanSizeForUnionType(mAdapter.getData().getReadOnly().getUnionType(position));
+    }
+
+    /**
+     * @param unionType 数据的 unionType, 数据为 null 时是 {@link UnionTypeItemObject#UNION_TYPE_NULL}
+     */
+    protected abstract int getSpanSizeForUnionType(int unionType);
+
+}
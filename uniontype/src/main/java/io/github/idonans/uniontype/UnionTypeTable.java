@@ -0,0 +1,84 @@
+package io.github.idonans.uniontype;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.SparseArrayCompat;
+
+/**
+ * 不可变的 unionType 查找表. unionType 的取值范围足够紧凑时使用直接下标访问的数组, 否则使用二分查找.
+ */
+final class UnionTypeTable<T> {
+
+    /**
+     * 数组的长度不超过 unionType 数量的倍数时使用数组
+     */
+    private static final int DENSE_MAX_FILL_FACTOR = 4;
+    /**
+     * unionType 数量很少时, 允许的最小数组长度
+     */
+    private static final int DENSE_MIN_CAPACITY = 64;
+
+    /**
+     * 使用数组时不为 null
+     */
+    @Nullable
+    private final Object[] mDenseValues;
+    private final int mDenseOffset;
+    /**
+     * 不使用数组时不为 null
+     */
+    @Nullable
+    private final SparseArrayCompat<T> mSparseValues;
+
+    /**
+     * @param values 会被复制, 之后的修改不影响此查找表
+     */
+    UnionTypeTable(@NonNull SparseArrayCompat<T> values) {
+        final int size = values.size();
+        if (size == 0) {
+            mDenseValues = new Object[0];
+            mDenseOffset = 0;
+            mSparseValues = null;
+            return;
+        }
+
+        // keyAt 按从小到大排列
+        final int min = values.keyAt(0);
+        final int max = values.keyAt(size - 1);
+        final long range = (long) max - min + 1;
+        if (range <= Math.max((long) size * DENSE_MAX_FILL_FACTOR, DENSE_MIN_CAPACITY)) {
+            mDenseValues = new Object[(int) range];
+            mDenseOffset = min;
+            for (int i = 0; i < size; i++) {
+                mDenseValues[values.keyAt(i) - min] = values.valueAt(i);
+            }
+            mSparseValues = null;
+        } else {
+            mDenseValues = null;
+            mDenseOffset = 0;
+            mSparseValues = values.clone();
+        }
+    }
+
+    /**
+     * @return 是否使用直接下标访问的数组
+     */
+    boolean isDense() {
+        return mDenseValues != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    T get(int unionType) {
+        if (mDenseValues != null) {
+            final int index = unionType - mDenseOffset;
+            if (index < 0 || index >= mDenseValues.length) {
+                return null;
+            }
+            return (T) mDenseValues[index];
+        }
+        //noinspection ConstantConditions
+        return mSparseValues.get(unionType);
+    }
+
+}
@@ -7,6 +7,8 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.List;
+
 import io.github.idonans.core.thread.BatchQueue;
 
 public abstract class UnionTypeViewHolder extends RecyclerView.ViewHolder {
@@ -39,8 +41,32 @@ public abstract class UnionTypeViewHolder extends RecyclerView.ViewHolder {
         onBindUpdate();
     }
 
+    /**
+     * @param payloads 如果为空, 需要完整刷新. 否则可以只刷新 payloads 描述的部分.
+     * @see DeepDiff#getChangePayload(Object)
+     */
+    public final void onBind(@Nullable UnionTypeItemObject unionTypeItemObject, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBind(unionTypeItemObject);
+            return;
+        }
+
+        this.unionTypeItemObject = unionTypeItemObject;
+        onBindUpdate(payloads);
+    }
+
     public abstract void onBindUpdate();
 
+    /**
+     * 只刷新 payloads 描述的部分. 默认完整刷新 {@link #onBindUpdate()}
+     *
+     * @param payloads 不为空, 包含自上次绑定以来所有的 payload
+     * @see DeepDiff#getChangePayload(Object)
+     */
+    public void onBindUpdate(@NonNull List<Object> payloads) {
+        onBindUpdate();
+    }
+
     @Nullable
     public <T> T getItemObject(@NonNull Class<T> clazz) {
         if (this.unionTypeItemObject == null) {
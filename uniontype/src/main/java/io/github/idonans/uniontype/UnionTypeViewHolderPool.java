@@ -0,0 +1,223 @@
+package io.github.idonans.uniontype;
+
+import android.app.Activity;
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+import androidx.collection.SparseArrayCompat;
+import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayDeque;
+
+import io.github.idonans.core.thread.TaskQueue;
+import io.github.idonans.core.thread.Threads;
+
+/**
+ * 在后台线程上预先创建 ViewHolder, 按 unionType 缓存. {@link UnionTypeAdapter#onCreateViewHolder(android.view.ViewGroup, int)}
+ * 优先从这里取出, 没有时再同步创建.
+ * <p>
+ * 预先创建的数量由 {@link UnionTypeMapper#collectPreCreateCounts(SparseArrayCompat)} 声明,
+ * 声明了数量的 unionType 对应的 {@link UnionTypeViewHolderCreator} 会在后台线程上调用,
+ * 与 AsyncLayoutInflater 的要求相同: 创建过程中不能依赖 UI 线程 (例如在构造中创建 Handler).
+ * <p>
+ * LayoutInflater 不是线程安全的, 后台线程上使用的 Host 会返回一个独立的 LayoutInflater,
+ * 与 AsyncLayoutInflater 相同, 它不包含 Activity 上设置的 Factory (例如 AppCompat 的控件替换),
+ * 对使用者的影响见 {@link UnionTypeMapper#collectPreCreateCounts(SparseArrayCompat)}.
+ */
+class UnionTypeViewHolderPool {
+
+    @NonNull
+    private final TaskQueue mPreCreateQueue = new TaskQueue(1);
+
+    /**
+     * 已创建完成等待取用的 ViewHolder, 只在 UI 线程访问
+     */
+    @NonNull
+    private final SparseArrayCompat<ArrayDeque<UnionTypeViewHolder>> mViewHolders = new SparseArrayCompat<>();
+
+    /**
+     * 每次 {@link #preCreate(Host, UnionTypeMapper)} 或 {@link #clear()} 时递增, 之前的后台任务不再继续创建
+     */
+    private volatile int mGeneration;
+
+    /**
+     * 按照 unionTypeMapper 声明的数量在后台线程上补足每个 unionType 的缓存
+     */
+    @UiThread
+    void preCreate(@NonNull Host host, @NonNull UnionTypeMapper unionTypeMapper) {
+        final SparseArrayCompat<Integer> preCreateCounts = new SparseArrayCompat<>();
+        unionTypeMapper.collectPreCreateCounts(preCreateCounts);
+
+        final int size = preCreateCounts.size();
+        final int[] unionTypes = new int[size];
+        final int[] counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            unionTypes[i] = preCreateCounts.keyAt(i);
+            final ArrayDeque<UnionTypeViewHolder> viewHolders = mViewHolders.get(unionTypes[i]);
+            final Integer count = preCreateCounts.valueAt(i);
+            counts[i] = (count == null ? 0 : count) - (viewHolders == null ? 0 : viewHolders.size());
+        }
+
+        final int generation = ++mGeneration;
+        final Host backgroundHost = new BackgroundHost(host);
+        mPreCreateQueue.enqueue(() -> preCreateInBackground(generation, backgroundHost, unionTypeMapper, unionTypes, counts));
+    }
+
+    @WorkerThread
+    private void preCreateInBackground(int generation,
+                                       @NonNull Host host,
+                                       @NonNull UnionTypeMapper unionTypeMapper,
+                                       @NonNull int[] unionTypes,
+                                       @NonNull int[] counts) {
+        for (int i = 0; i < unionTypes.length; i++) {
+            final int unionType = unionTypes[i];
+            for (int j = 0; j < counts[i]; j++) {
+                if (generation != mGeneration) {
+                    return;
+                }
+
+                final UnionTypeViewHolder viewHolder;
+                try {
+                    viewHolder = unionTypeMapper.map(host, unionType);
+                } catch (Throwable e) {
+                    // 该 unionType 不能在后台线程上创建, 使用时同步创建
+                    UnionTypeLog.e(e, "UnionTypeViewHolderPool fail to pre create unionType:%s", unionType);
+                    break;
+                }
+                if (viewHolder == null) {
+                    break;
+                }
+
+                Threads.postUi(() -> {
+                    if (generation != mGeneration) {
+                        return;
+                    }
+                    ArrayDeque<UnionTypeViewHolder> viewHolders = mViewHolders.get(unionType);
+                    if (viewHolders == null) {
+                        viewHolders = new ArrayDeque<>();
+                        mViewHolders.put(unionType, viewHolders);
+                    }
+                    viewHolders.add(viewHolder);
+                });
+            }
+        }
+    }
+
+    /**
+     * @return 预先创建的 ViewHolder, 没有时返回 null
+     */
+    @UiThread
+    @Nullable
+    UnionTypeViewHolder poll(int unionType) {
+        final ArrayDeque<UnionTypeViewHolder> viewHolders = mViewHolders.get(unionType);
+        if (viewHolders == null) {
+            return null;
+        }
+        return viewHolders.poll();
+    }
+
+    /**
+     * 丢弃所有预先创建的 ViewHolder, 并停止正在进行的预先创建
+     */
+    @UiThread
+    void clear() {
+        mGeneration++;
+        mViewHolders.clear();
+    }
+
+    /**
+     * 在后台线程上使用的 Host, 除 LayoutInflater 之外都与 host 相同
+     */
+    private static final class BackgroundHost implements Host {
+
+        @NonNull
+        private final Host mHost;
+        @NonNull
+        private final LayoutInflater mLayoutInflater;
+
+        private BackgroundHost(@NonNull Host host) {
+            mHost = host;
+            mLayoutInflater = new BasicInflater(host.getLayoutInflater().getContext());
+        }
+
+        @Nullable
+        @Override
+        public Activity getActivity() {
+            return mHost.getActivity();
+        }
+
+        @Nullable
+        @Override
+        public Fragment getFragment() {
+            return mHost.getFragment();
+        }
+
+        @NonNull
+        @Override
+        public LayoutInflater getLayoutInflater() {
+            return mLayoutInflater;
+        }
+
+        @NonNull
+        @Override
+        public RecyclerView getRecyclerView() {
+            return mHost.getRecyclerView();
+        }
+
+        @NonNull
+        @Override
+        public UnionTypeAdapter getAdapter() {
+            return mHost.getAdapter();
+        }
+
+        @NonNull
+        @Override
+        public RecyclerView.RecycledViewPool getSharedRecycledViewPool() {
+            return mHost.getSharedRecycledViewPool();
+        }
+    }
+
+    /**
+     * 不包含任何 Factory 的 LayoutInflater, 与 AsyncLayoutInflater 中的实现相同
+     */
+    private static final class BasicInflater extends LayoutInflater {
+
+        private static final String[] CLASS_PREFIX_LIST = {
+                "android.widget.",
+                "android.webkit.",
+                "android.app."
+        };
+
+        private BasicInflater(Context context) {
+            super(context);
+        }
+
+        @Override
+        public LayoutInflater cloneInContext(Context newContext) {
+            return new BasicInflater(newContext);
+        }
+
+        @Override
+        protected View onCreateView(String name, AttributeSet attrs) throws ClassNotFoundException {
+            for (String prefix : CLASS_PREFIX_LIST) {
+                try {
+                    final View view = createView(name, prefix, attrs);
+                    if (view != null) {
+                        return view;
+                    }
+                } catch (ClassNotFoundException e) {
+                    // 尝试下一个前缀
+                }
+            }
+            return super.onCreateView(name, attrs);
+        }
+    }
+
+}